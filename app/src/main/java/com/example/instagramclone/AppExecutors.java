@@ -0,0 +1,63 @@
+package com.example.instagramclone;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ *  AppExecutors holds the thread pools shared by the whole app, so work that
+ *  should not run on the main thread, e.g. building captions or decoding
+ *  photos, does not each create threads of its own
+ */
+public class AppExecutors {
+
+    private static final int BACKGROUND_THREADS = 2;
+
+    private static AppExecutors sInstance;
+
+    private final ExecutorService mBackground;
+    private final Executor mMainThread;
+
+    private AppExecutors() {
+        mBackground = Executors.newFixedThreadPool(BACKGROUND_THREADS, new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "app-background");
+                // Background work must never compete with drawing frames on the main thread
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        mMainThread = new Executor() {
+            private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+            @Override
+            public void execute(@NonNull Runnable runnable) {
+                mHandler.post(runnable);
+            }
+        };
+    }
+
+    public static synchronized AppExecutors get() {
+        if(sInstance == null) {
+            sInstance = new AppExecutors();
+        }
+        return sInstance;
+    }
+
+    // For CPU work such as building text layouts or decoding bitmaps
+    public ExecutorService background() {
+        return mBackground;
+    }
+
+    // For handing results back to the UI
+    public Executor mainThread() {
+        return mMainThread;
+    }
+}
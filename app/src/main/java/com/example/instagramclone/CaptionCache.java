@@ -0,0 +1,143 @@
+package com.example.instagramclone;
+
+import android.graphics.Typeface;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
+import android.util.LruCache;
+import android.widget.TextView;
+
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ *  CaptionCache builds the caption of a post, i.e. the bold username of its
+ *  creator followed by its description, and keeps the result so it is only
+ *  built once per version of a post. It is shared by the feed and the details
+ *  screen. Specifically, this class handles the following features:
+ *      - Building captions with a bold span instead of parsing HTML
+ *      - Building the captions of a freshly loaded page of posts on a
+ *      background thread, before their rows are bound
+ *      - Precomputing the text layout of those captions, so the TextView
+ *      does not have to measure them on the main thread
+ *      - Keeping a bounded number of captions keyed by the post's objectId
+ *      and updatedAt, so an edited post gets a new caption
+ */
+public class CaptionCache {
+
+    private static final int MAX_CAPTIONS = 200;
+
+    // A built caption and, if the text metrics were known when it was built, its precomputed layout
+    private static class Caption {
+        final Spanned text;
+        final PrecomputedTextCompat precomputedText;
+
+        Caption(Spanned text, PrecomputedTextCompat precomputedText) {
+            this.text = text;
+            this.precomputedText = precomputedText;
+        }
+    }
+
+    // Everything needed to build a caption, read from the post on the main thread
+    private static class CaptionSource {
+        final String key;
+        final String username;
+        final String description;
+
+        CaptionSource(String key, String username, String description) {
+            this.key = key;
+            this.username = username;
+            this.description = description;
+        }
+    }
+
+    private static CaptionCache sInstance;
+
+    // LruCache is thread safe, so captions built in the background can be put in directly
+    private final LruCache<String, Caption> mCaptions = new LruCache<>(MAX_CAPTIONS);
+    // Text metrics of the caption TextViews, needed to precompute layouts in the background
+    private volatile PrecomputedTextCompat.Params mTextMetricsParams;
+
+    private CaptionCache() {}
+
+    public static CaptionCache get() {
+        if(sInstance == null) {
+            sInstance = new CaptionCache();
+        }
+        return sInstance;
+    }
+
+    public static String keyOf(String objectId, Date updatedAt) {
+        return objectId + ":" + ((updatedAt == null) ? 0 : updatedAt.getTime());
+    }
+
+    // Key of the caption of the post. Posts still waiting in the outbox have no objectId yet
+    public static String keyOf(Post post) {
+        if(post.isPending()) {
+            return "outbox:" + post.getOutboxId();
+        }
+        return keyOf(post.getObjectId(), post.getUpdatedAt());
+    }
+
+    // Remembers the text metrics of a caption TextView so layouts can be precomputed for it
+    public void setTextMetricsParams(TextView textView) {
+        if(mTextMetricsParams == null) {
+            mTextMetricsParams = TextViewCompat.getTextMetricsParams(textView);
+        }
+    }
+
+    // Builds the captions of the posts on a background thread, unless they are already cached
+    public void prefetch(List<Post> posts) {
+        final List<CaptionSource> sources = new ArrayList<>();
+        for(Post post : posts) {
+            String key = keyOf(post);
+            if(mCaptions.get(key) == null) {
+                sources.add(new CaptionSource(key, UserCache.get().resolve(post.getUser()).username, post.getDescription()));
+            }
+        }
+        if(sources.isEmpty()) {
+            return;
+        }
+        AppExecutors.get().background().execute(new Runnable() {
+            @Override
+            public void run() {
+                for(CaptionSource source : sources) {
+                    if(mCaptions.get(source.key) == null) {
+                        mCaptions.put(source.key, build(source.username, source.description, mTextMetricsParams));
+                    }
+                }
+            }
+        });
+    }
+
+    // Shows the caption on the text view. A caption that was not prefetched is built right away
+    public void bind(TextView textView, String key, String username, String description) {
+        Caption caption = mCaptions.get(key);
+        if(caption == null) {
+            caption = build(username, description, null);
+            mCaptions.put(key, caption);
+        }
+        // A precomputed layout can only be used by a TextView with the same text metrics
+        if(caption.precomputedText != null
+                && caption.precomputedText.getParams().equals(TextViewCompat.getTextMetricsParams(textView))) {
+            TextViewCompat.setPrecomputedText(textView, caption.precomputedText);
+        } else {
+            textView.setText(caption.text);
+        }
+    }
+
+    private static Caption build(String username, String description, PrecomputedTextCompat.Params params) {
+        SpannableStringBuilder text = new SpannableStringBuilder(username);
+        text.setSpan(new StyleSpan(Typeface.BOLD), 0, text.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        text.append(' ');
+        if(description != null) {
+            text.append(description);
+        }
+        PrecomputedTextCompat precomputedText = (params == null) ? null : PrecomputedTextCompat.create(text, params);
+        return new Caption(text, precomputedText);
+    }
+}
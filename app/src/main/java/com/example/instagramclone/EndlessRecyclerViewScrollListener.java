@@ -0,0 +1,46 @@
+package com.example.instagramclone;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ *  EndlessRecyclerViewScrollListener is a subclass of {@link RecyclerView.OnScrollListener}.
+ *  It watches a Recycler View as the user scrolls down and asks for more items
+ *  a few rows before the end of the list is reached, so the next page can be
+ *  loaded before the user actually gets there
+ */
+public abstract class EndlessRecyclerViewScrollListener extends RecyclerView.OnScrollListener {
+
+    // How many rows from the end of the list we start loading the next page
+    private static final int DEFAULT_VISIBLE_THRESHOLD = 5;
+
+    private final LinearLayoutManager mLayoutManager;
+    private final int mVisibleThreshold;
+
+    public EndlessRecyclerViewScrollListener(LinearLayoutManager layoutManager) {
+        this(layoutManager, DEFAULT_VISIBLE_THRESHOLD);
+    }
+
+    public EndlessRecyclerViewScrollListener(LinearLayoutManager layoutManager, int visibleThreshold) {
+        this.mLayoutManager = layoutManager;
+        this.mVisibleThreshold = visibleThreshold;
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        // Only scrolling towards the end of the list can bring us closer to needing more items
+        if(dy <= 0) {
+            return;
+        }
+        int totalItemCount = mLayoutManager.getItemCount();
+        int lastVisibleItemPosition = mLayoutManager.findLastVisibleItemPosition();
+        if(lastVisibleItemPosition + mVisibleThreshold >= totalItemCount) {
+            onLoadMore(totalItemCount, recyclerView);
+        }
+    }
+
+    // Called when the user nears the end of the list. May be called repeatedly while the next
+    // page is still loading, so implementations should ignore calls they are already handling
+    public abstract void onLoadMore(int totalItemsCount, RecyclerView view);
+}
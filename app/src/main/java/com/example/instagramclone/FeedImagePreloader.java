@@ -0,0 +1,139 @@
+package com.example.instagramclone;
+
+import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.request.target.Target;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ *  FeedImagePreloader is a subclass of {@link RecyclerView.OnScrollListener}.
+ *  It downloads and decodes the images of the rows just past the edge of the
+ *  screen while the user scrolls, so they are already in Glide's memory cache
+ *  when their rows are bound. Specifically, this class handles the following
+ *  features:
+ *      - Preloading the rows ahead of the direction the user is scrolling in
+ *      - Preloading further ahead the faster the user scrolls, e.g. during a
+ *      fling
+ *      - Cancelling the preloads when the user reverses direction or leaves
+ *      the screen, so no bandwidth is spent on rows the user turned away from
+ */
+public class FeedImagePreloader extends RecyclerView.OnScrollListener {
+
+    /**
+     *  Provides the image requests of the rows to preload
+     */
+    public interface PreloadModelProvider {
+        // Requests for the images of the row at the position, sized exactly as the row will
+        // show them. May be empty, e.g. while the size of the images is not known yet
+        List<RequestBuilder<Drawable>> getPreloadRequests(RequestManager glide, int position);
+    }
+
+    // Scrolling at this speed or faster preloads the maximum number of rows
+    private static final float FLING_PIXELS_PER_SECOND = 4000f;
+    // Weight of the newest scroll event in the smoothed scroll speed
+    private static final float VELOCITY_SMOOTHING = 0.3f;
+
+    private final RequestManager mGlide;
+    private final PreloadModelProvider mModelProvider;
+    private final int mMinPreload;
+    private final int mMaxPreload;
+
+    // Preloads that may still be running, so they can be cancelled
+    private final Deque<Target<Drawable>> mTargets = new ArrayDeque<>();
+    private boolean mScrollingDown = true;
+    // The farthest position preloaded in the current direction, or NO_POSITION
+    private int mLastPreloadedPosition = RecyclerView.NO_POSITION;
+    private long mLastScrollTime;
+    private float mPixelsPerSecond;
+
+    public FeedImagePreloader(RequestManager glide, PreloadModelProvider modelProvider,
+                              int minPreload, int maxPreload) {
+        this.mGlide = glide;
+        this.mModelProvider = modelProvider;
+        this.mMinPreload = minPreload;
+        this.mMaxPreload = maxPreload;
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        if(dy == 0) {
+            return;
+        }
+        boolean scrollingDown = dy > 0;
+        if(scrollingDown != mScrollingDown) {
+            // The rows preloaded so far are behind the user now
+            cancel();
+            mScrollingDown = scrollingDown;
+        }
+        updateVelocity(Math.abs(dy));
+
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        int itemCount = layoutManager.getItemCount();
+        int preloadCount = preloadCount();
+        if(scrollingDown) {
+            int first = layoutManager.findLastVisibleItemPosition() + 1;
+            int last = Math.min(itemCount - 1, first + preloadCount - 1);
+            if(mLastPreloadedPosition != RecyclerView.NO_POSITION) {
+                first = Math.max(first, mLastPreloadedPosition + 1);
+            }
+            for(int position = first; position <= last; position++) {
+                preload(position);
+            }
+        } else {
+            int first = layoutManager.findFirstVisibleItemPosition() - 1;
+            int last = Math.max(0, first - preloadCount + 1);
+            if(mLastPreloadedPosition != RecyclerView.NO_POSITION) {
+                first = Math.min(first, mLastPreloadedPosition - 1);
+            }
+            for(int position = first; position >= last; position--) {
+                preload(position);
+            }
+        }
+    }
+
+    // Cancels every preload that is still running, e.g. when the user leaves the screen
+    public void cancel() {
+        while(!mTargets.isEmpty()) {
+            mGlide.clear(mTargets.poll());
+        }
+        mLastPreloadedPosition = RecyclerView.NO_POSITION;
+    }
+
+    private void preload(int position) {
+        if(position == RecyclerView.NO_POSITION) {
+            return;
+        }
+        for(RequestBuilder<Drawable> request : mModelProvider.getPreloadRequests(mGlide, position)) {
+            mTargets.offer(request.preload());
+        }
+        // Finished preloads clear themselves, so only the most recent ones need to be remembered
+        while(mTargets.size() > mMaxPreload * 2) {
+            mTargets.poll();
+        }
+        mLastPreloadedPosition = position;
+    }
+
+    private void updateVelocity(int pixels) {
+        long now = SystemClock.uptimeMillis();
+        long elapsed = Math.max(1, now - mLastScrollTime);
+        mLastScrollTime = now;
+        float pixelsPerSecond = pixels * 1000f / elapsed;
+        mPixelsPerSecond += VELOCITY_SMOOTHING * (pixelsPerSecond - mPixelsPerSecond);
+    }
+
+    // Slow scrolling preloads a few rows, a fling preloads up to the maximum
+    private int preloadCount() {
+        float speed = Math.min(1f, mPixelsPerSecond / FLING_PIXELS_PER_SECOND);
+        return mMinPreload + Math.round(speed * (mMaxPreload - mMinPreload));
+    }
+}
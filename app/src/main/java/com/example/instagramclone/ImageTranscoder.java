@@ -0,0 +1,168 @@
+package com.example.instagramclone;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.exifinterface.media.ExifInterface;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ *  ImageTranscoder prepares a photo taken with the camera for upload on a
+ *  background thread. Camera photos come out at full sensor resolution, often
+ *  sideways with only an EXIF tag saying how to turn them, so this class
+ *  handles the following features:
+ *      - Reading the EXIF orientation of the photo and turning it upright
+ *      - Decoding a subsampled copy of the photo rather than the full-size one
+ *      - Scaling the photo down to a capped long edge and re-encoding it at a
+ *      target quality, as JPEG or optionally WebP
+ *      - Producing a small preview bitmap for the compose screen
+ *      - Reporting how many bytes the re-encoding saved
+ */
+public class ImageTranscoder {
+
+    public static final String TAG = ImageTranscoder.class.getSimpleName();
+
+    // The feed never shows a post picture wider than this, so larger uploads are wasted bytes
+    public static final int MAX_UPLOAD_EDGE_PX = 1080;
+    public static final int UPLOAD_QUALITY = 80;
+
+    /**
+     *  The photo after transcoding
+     */
+    public static class Result {
+        // Upright, downscaled copy of the photo to preview before it is posted
+        public final Bitmap preview;
+        // The re-encoded photo to upload
+        public final File uploadFile;
+        public final long originalBytes;
+        public final long uploadBytes;
+
+        Result(Bitmap preview, File uploadFile, long originalBytes, long uploadBytes) {
+            this.preview = preview;
+            this.uploadFile = uploadFile;
+            this.originalBytes = originalBytes;
+            this.uploadBytes = uploadBytes;
+        }
+
+        public long getBytesSaved() {
+            return originalBytes - uploadBytes;
+        }
+    }
+
+    /**
+     *  Callback for the result of a transcoding, called on the main thread
+     */
+    public interface Callback {
+        void onTranscoded(Result result);
+
+        void onError(Exception e);
+    }
+
+    private final boolean mUseWebp;
+
+    public ImageTranscoder(boolean useWebp) {
+        this.mUseWebp = useWebp;
+    }
+
+    // File extension matching the format uploads are encoded in
+    public String getFileExtension() {
+        return mUseWebp ? ".webp" : ".jpg";
+    }
+
+    // Transcodes the photo in the background and writes the upload to the destination file. The
+    // preview is scaled so its long edge is at most previewMaxEdge pixels
+    public void transcode(final File photoFile, final File destination, final int previewMaxEdge,
+                          final Callback callback) {
+        AppExecutors.get().background().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final Result result = transcodeNow(photoFile, destination, previewMaxEdge);
+                    Log.i(TAG, "Transcoded photo from " + result.originalBytes + " to "
+                            + result.uploadBytes + " bytes, saved " + result.getBytesSaved() + " bytes");
+                    AppExecutors.get().mainThread().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onTranscoded(result);
+                        }
+                    });
+                } catch (final IOException e) {
+                    Log.e(TAG, "Issue with transcoding photo", e);
+                    AppExecutors.get().mainThread().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onError(e);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    private Result transcodeNow(File photoFile, File destination, int previewMaxEdge) throws IOException {
+        ExifInterface exif = new ExifInterface(photoFile.getAbsolutePath());
+
+        // Read only the dimensions first to work out how much the photo can be subsampled
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(photoFile.getAbsolutePath(), options);
+        int longEdge = Math.max(options.outWidth, options.outHeight);
+        if(longEdge <= 0) {
+            throw new IOException("Could not read the dimensions of " + photoFile);
+        }
+
+        // Decode at the smallest power of two subsampling that still covers the upload size
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = 1;
+        while(longEdge / (options.inSampleSize * 2) >= MAX_UPLOAD_EDGE_PX) {
+            options.inSampleSize *= 2;
+        }
+        Bitmap decoded = BitmapFactory.decodeFile(photoFile.getAbsolutePath(), options);
+        if(decoded == null) {
+            throw new IOException("Could not decode " + photoFile);
+        }
+
+        // Scale down to the exact upload size and turn the photo upright in a single pass
+        Matrix matrix = new Matrix();
+        float scale = Math.min(1f, (float) MAX_UPLOAD_EDGE_PX / Math.max(decoded.getWidth(), decoded.getHeight()));
+        matrix.postScale(exif.isFlipped() ? -scale : scale, scale);
+        matrix.postRotate(exif.getRotationDegrees());
+        Bitmap upload = Bitmap.createBitmap(decoded, 0, 0, decoded.getWidth(), decoded.getHeight(), matrix, true);
+        if(upload != decoded) {
+            decoded.recycle();
+        }
+
+        OutputStream out = new FileOutputStream(destination);
+        try {
+            Bitmap.CompressFormat format = mUseWebp ? webpFormat() : Bitmap.CompressFormat.JPEG;
+            upload.compress(format, UPLOAD_QUALITY, out);
+        } finally {
+            out.close();
+        }
+
+        float previewScale = Math.min(1f, (float) previewMaxEdge / Math.max(upload.getWidth(), upload.getHeight()));
+        Bitmap preview = Bitmap.createScaledBitmap(upload, Math.round(upload.getWidth() * previewScale),
+                Math.round(upload.getHeight() * previewScale), true);
+        if(preview != upload) {
+            upload.recycle();
+        }
+        return new Result(preview, destination, photoFile.length(), destination.length());
+    }
+
+    // Lossy WebP, which API 30 split out of the deprecated WEBP format. Below API 30 WEBP is lossy
+    // for any quality below 100
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat webpFormat() {
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            return Bitmap.CompressFormat.WEBP_LOSSY;
+        }
+        return Bitmap.CompressFormat.WEBP;
+    }
+}
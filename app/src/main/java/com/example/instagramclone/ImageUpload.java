@@ -0,0 +1,272 @@
+package com.example.instagramclone;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.parse.ParseDecoder;
+import com.parse.ParseException;
+import com.parse.ParseFile;
+import com.parse.ParseUser;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLConnection;
+import java.util.concurrent.CountDownLatch;
+
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+
+/**
+ *  ImageUpload uploads the image of a post that is still being composed, so
+ *  the image is usually on the server by the time the user submits the post
+ *  and only the small post row is left to save. Specifically, this class
+ *  handles the following features:
+ *      - Uploading the image in the background as soon as it is taken, and
+ *      reporting the progress to the compose screen
+ *      - Cancelling the upload, e.g. when the photo is retaken or the screen
+ *      is left without submitting the post, which aborts the request even if
+ *      it is already being sent
+ *      - Letting the {@link PostUploadWorker} of the submitted post wait for
+ *      the upload instead of uploading the image a second time
+ */
+public class ImageUpload {
+
+    public static final String TAG = ImageUpload.class.getSimpleName();
+
+    // The image is written to the request in chunks of this size, with progress reported in between
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    /**
+     *  Listener for the progress of the upload, called on the main thread
+     */
+    public interface Listener {
+        void onProgress(int percentDone);
+
+        // The upload finished, e is null if the image is on the server
+        void onDone(@Nullable ParseException e);
+    }
+
+    private final File mImageFile;
+    private final CountDownLatch mDone = new CountDownLatch(1);
+    private volatile ParseFile mUploadedImage;
+    // The request sending the image. It goes through the REST API rather than ParseFile, whose
+    // cancel only stops a save that has not been sent yet
+    private volatile Call mCall;
+    private volatile boolean mCancelled;
+    private Listener mListener;
+
+    private ImageUpload(File imageFile) {
+        mImageFile = imageFile;
+    }
+
+    // Starts uploading the image file. The file is read into memory first, so the caller may move
+    // or delete it while the upload runs
+    public static ImageUpload start(File imageFile, Listener listener) {
+        final ImageUpload upload = new ImageUpload(imageFile);
+        upload.mListener = listener;
+        AppExecutors.get().background().execute(new Runnable() {
+            @Override
+            public void run() {
+                upload.upload();
+            }
+        });
+        return upload;
+    }
+
+    // Replaces the listener, or removes it when null, e.g. when the screen hands the upload over
+    public void setListener(@Nullable Listener listener) {
+        mListener = listener;
+    }
+
+    // Aborts the request so it stops competing with newer uploads for the network, stops reporting
+    // and drops the uploaded image. An image that finished uploading stays on the server unused
+    public void cancel() {
+        mCancelled = true;
+        mListener = null;
+        Call call = mCall;
+        if(call != null) {
+            call.cancel();
+        }
+        mDone.countDown();
+    }
+
+    // Whether the upload finished, failed or was cancelled
+    public boolean isDone() {
+        return mDone.getCount() == 0;
+    }
+
+    // The image on the server, or null if the upload has not finished, failed or was cancelled
+    @Nullable
+    public ParseFile getUploadedImage() {
+        return mCancelled ? null : mUploadedImage;
+    }
+
+    // Blocks until the upload finished, failed or was cancelled. Must not be called on the main
+    // thread, which the upload reports its result on
+    @Nullable
+    public ParseFile await() throws InterruptedException {
+        mDone.await();
+        return getUploadedImage();
+    }
+
+    private void upload() {
+        if(mCancelled) {
+            return;
+        }
+        byte[] bytes;
+        try {
+            bytes = readFile(mImageFile);
+        } catch (IOException e) {
+            Log.e(TAG, "Issue with reading " + mImageFile, e);
+            onDone(null, new ParseException(e));
+            return;
+        }
+        String name = mImageFile.getName();
+        Request.Builder request = new Request.Builder()
+                .url(ParseApplication.SERVER_URL + "files/" + name)
+                .header("X-Parse-Application-Id", ParseApplication.APPLICATION_ID)
+                .header("X-Parse-Client-Key", ParseApplication.CLIENT_KEY)
+                .post(new ProgressRequestBody(contentType(name), bytes));
+        ParseUser currentUser = ParseUser.getCurrentUser();
+        if(currentUser != null && currentUser.getSessionToken() != null) {
+            request.header("X-Parse-Session-Token", currentUser.getSessionToken());
+        }
+        Call call = ParseApplication.getMeteredClient().newCall(request.build());
+        mCall = call;
+        // cancel may have run before the call was set, in which case it did not abort it
+        if(mCancelled) {
+            return;
+        }
+        try {
+            onDone(readUploadedImage(call.execute()), null);
+        } catch (IOException e) {
+            // Aborting the call fails it, but a cancelled upload reports nothing
+            if(!mCancelled) {
+                onDone(null, new ParseException(e));
+            }
+        } catch (ParseException e) {
+            onDone(null, e);
+        }
+    }
+
+    // The file the server saved the image as, from the response to the upload
+    private static ParseFile readUploadedImage(Response response) throws IOException, ParseException {
+        try {
+            ResponseBody body = response.body();
+            if(!response.isSuccessful() || body == null) {
+                throw new ParseException(ParseException.OTHER_CAUSE, "Unexpected response " + response.code());
+            }
+            JSONObject json = new JSONObject(body.string());
+            json.put("__type", "File");
+            return (ParseFile) ParseDecoder.get().decode(json);
+        } catch (JSONException e) {
+            throw new ParseException(e);
+        } finally {
+            response.close();
+        }
+    }
+
+    @Nullable
+    private static MediaType contentType(String fileName) {
+        String mimeType = URLConnection.guessContentTypeFromName(fileName);
+        return MediaType.parse(mimeType != null ? mimeType : "application/octet-stream");
+    }
+
+    private void onDone(@Nullable ParseFile uploadedImage, @Nullable final ParseException e) {
+        if(e != null) {
+            Log.e(TAG, "Issue with uploading " + mImageFile.getName(), e);
+        }
+        mUploadedImage = uploadedImage;
+        mDone.countDown();
+        AppExecutors.get().mainThread().execute(new Runnable() {
+            @Override
+            public void run() {
+                Listener listener = mListener;
+                if(listener != null && !mCancelled) {
+                    listener.onDone(e);
+                }
+            }
+        });
+    }
+
+    // Request body of the image that reports the share of it that was sent to the listener
+    private class ProgressRequestBody extends RequestBody {
+
+        private final MediaType mContentType;
+        private final byte[] mBytes;
+
+        ProgressRequestBody(@Nullable MediaType contentType, byte[] bytes) {
+            mContentType = contentType;
+            mBytes = bytes;
+        }
+
+        @Nullable
+        @Override
+        public MediaType contentType() {
+            return mContentType;
+        }
+
+        @Override
+        public long contentLength() {
+            return mBytes.length;
+        }
+
+        // Called again if OkHttp retries the request, so the progress starts over
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            int reportedPercent = -1;
+            int written = 0;
+            while(written < mBytes.length) {
+                int count = Math.min(CHUNK_SIZE, mBytes.length - written);
+                sink.write(mBytes, written, count);
+                written += count;
+                int percentDone = (int) (100L * written / mBytes.length);
+                if(percentDone != reportedPercent) {
+                    reportedPercent = percentDone;
+                    onProgress(percentDone);
+                }
+            }
+        }
+    }
+
+    private void onProgress(final int percentDone) {
+        AppExecutors.get().mainThread().execute(new Runnable() {
+            @Override
+            public void run() {
+                Listener listener = mListener;
+                if(listener != null && !mCancelled) {
+                    listener.onProgress(percentDone);
+                }
+            }
+        });
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            int read = 0;
+            while(read < bytes.length) {
+                int count = in.read(bytes, read, bytes.length - read);
+                if(count < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+                read += count;
+            }
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.instagramclone;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.parse.ParseException;
+import com.parse.ParseObject;
+import com.parse.ParseUser;
+import com.parse.SaveCallback;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *  LikeWriteCoalescer sits between the like buttons of the app and the Parse
+ *  database. Instead of saving a post on every tap, it shows the new like
+ *  state right away and writes it to the database a moment later.
+ *  Specifically, this class handles the following features:
+ *      - Updating the {@link LikedPostsIndex} immediately when a post is liked
+ *      or unliked, so the like button and count change without waiting on
+ *      the network
+ *      - Collapsing repeated toggles of the same post within a short window
+ *      down to the final state, and dropping toggles that cancel each other
+ *      - Saving every changed post together in one batched save
+ *      - Retrying failed saves with a growing delay, and rolling back the
+ *      shown like state if the save keeps failing
+ *  All methods are meant to be called from the main thread.
+ */
+public class LikeWriteCoalescer {
+
+    public static final String TAG = LikeWriteCoalescer.class.getSimpleName();
+
+    // How long to wait after the last tap before writing the likes to the database
+    private static final long COALESCE_WINDOW_MILLIS = 600;
+    private static final int MAX_SAVE_ATTEMPTS = 3;
+    // Delay before the first retry, doubled for every retry after it
+    private static final long RETRY_BASE_DELAY_MILLIS = 1000;
+
+    /**
+     *  Listener for like counts changing outside of the liked posts index, i.e. when the
+     *  database returns a new count for a post or a write was rolled back
+     */
+    public interface Listener {
+        void onLikeCountChanged(String postId);
+    }
+
+    // A like or unlike of a single post that has not been written to the database yet
+    private static class PendingLike {
+        final Post post;
+        // Whether the post is liked in the database, or will be once the save in flight finishes
+        boolean baseLiked;
+        // Whether the user wants the post to be liked, i.e. the state shown in the app
+        boolean desiredLiked;
+
+        PendingLike(Post post, boolean baseLiked) {
+            this.post = post;
+            this.baseLiked = baseLiked;
+            this.desiredLiked = baseLiked;
+        }
+    }
+
+    private static LikeWriteCoalescer sInstance;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final LikedPostsIndex mLikedPostsIndex = LikedPostsIndex.get();
+    private final List<Listener> mListeners = new ArrayList<>();
+    // Toggles waiting for the coalescing window to pass, keyed by post objectId
+    private final Map<String, PendingLike> mPendingLikes = new HashMap<>();
+    // Toggles being saved to the database, keyed by post objectId
+    private final Map<String, PendingLike> mInFlightLikes = new HashMap<>();
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private LikeWriteCoalescer() {}
+
+    public static LikeWriteCoalescer get() {
+        if(sInstance == null) {
+            sInstance = new LikeWriteCoalescer();
+        }
+        return sInstance;
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    // Likes the post if the user has not liked it yet, or removes the like otherwise. The new state
+    // is shown right away and written to the database once the user stops tapping. Returns false,
+    // without toggling, while the liked posts index has not loaded, since whether the post is
+    // liked is not known yet and a like of a liked post would still increment its count
+    public boolean toggleLike(Post post) {
+        if(!mLikedPostsIndex.isLoaded()) {
+            // Loads it again if an earlier load failed
+            mLikedPostsIndex.load();
+            return false;
+        }
+        String postId = post.getObjectId();
+        PendingLike pendingLike = mPendingLikes.get(postId);
+        if(pendingLike == null) {
+            pendingLike = new PendingLike(post, mLikedPostsIndex.isLiked(postId));
+            mPendingLikes.put(postId, pendingLike);
+        }
+        pendingLike.desiredLiked = !pendingLike.desiredLiked;
+        mLikedPostsIndex.setLiked(postId, pendingLike.desiredLiked);
+
+        // Every tap restarts the window so a burst of taps results in a single write
+        mHandler.removeCallbacks(mFlushRunnable);
+        mHandler.postDelayed(mFlushRunnable, COALESCE_WINDOW_MILLIS);
+        return true;
+    }
+
+    // The like count of the post including likes that have not been written to the database yet.
+    // Likes being saved are already part of the post's count
+    public int getDisplayedLikeCount(Post post) {
+        int likeCount = post.getLikeCount();
+        PendingLike pendingLike = mPendingLikes.get(post.getObjectId());
+        if(pendingLike != null && pendingLike.desiredLiked != pendingLike.baseLiked) {
+            likeCount += pendingLike.desiredLiked ? 1 : -1;
+        }
+        return Math.max(likeCount, 0);
+    }
+
+    // Writes every pending like that changes the post's state in one batched save. Posts that are
+    // still being saved are left for the next flush so their writes stay in order
+    private void flush() {
+        ParseUser currentUser = ParseUser.getCurrentUser();
+        List<PendingLike> batch = new ArrayList<>();
+        Iterator<PendingLike> iterator = mPendingLikes.values().iterator();
+        while(iterator.hasNext()) {
+            PendingLike pendingLike = iterator.next();
+            String postId = pendingLike.post.getObjectId();
+            if(mInFlightLikes.containsKey(postId)) {
+                continue;
+            }
+            iterator.remove();
+            // An even number of toggles leaves the post as it was, so there is nothing to write
+            if(pendingLike.desiredLiked == pendingLike.baseLiked || currentUser == null) {
+                continue;
+            }
+            if(pendingLike.desiredLiked) {
+                pendingLike.post.like(currentUser);
+            } else {
+                pendingLike.post.unlike(currentUser);
+            }
+            mInFlightLikes.put(postId, pendingLike);
+            batch.add(pendingLike);
+        }
+        if(!batch.isEmpty()) {
+            save(batch, 1);
+        }
+    }
+
+    private void save(final List<PendingLike> batch, final int attempt) {
+        List<Post> posts = new ArrayList<>();
+        for(PendingLike pendingLike : batch) {
+            posts.add(pendingLike.post);
+        }
+        ParseObject.saveAllInBackground(posts, new SaveCallback() {
+            @Override
+            public void done(ParseException e) {
+                if(e != null && attempt < MAX_SAVE_ATTEMPTS) {
+                    Log.w(TAG, "Issue with saving likes, attempt " + attempt, e);
+                    // A failed save keeps its changes on the posts, so saving them again retries it
+                    long delay = RETRY_BASE_DELAY_MILLIS << (attempt - 1);
+                    mHandler.postDelayed(new Runnable() {
+                        @Override
+                        public void run() {
+                            save(batch, attempt + 1);
+                        }
+                    }, delay);
+                    return;
+                }
+                if(e != null) {
+                    Log.e(TAG, "Issue with saving likes, rolling back", e);
+                }
+                for(PendingLike pendingLike : batch) {
+                    onSaveFinished(pendingLike);
+                }
+                // Toggles that happened while the batch was being saved can be written now
+                if(!mPendingLikes.isEmpty()) {
+                    mHandler.removeCallbacks(mFlushRunnable);
+                    mHandler.postDelayed(mFlushRunnable, COALESCE_WINDOW_MILLIS);
+                }
+            }
+        });
+    }
+
+    // A batched save can partly succeed, so a post that is still dirty is one whose write failed
+    private void onSaveFinished(PendingLike pendingLike) {
+        Post post = pendingLike.post;
+        String postId = post.getObjectId();
+        mInFlightLikes.remove(postId);
+        // Posts without a like count only change their likes
+        if(post.isDirty(Post.KEY_LIKES)) {
+            rollBack(pendingLike);
+        }
+        for(Listener listener : new ArrayList<>(mListeners)) {
+            listener.onLikeCountChanged(postId);
+        }
+    }
+
+    // Drops the unsaved changes of the post and shows the like state the database still has
+    private void rollBack(PendingLike pendingLike) {
+        Post post = pendingLike.post;
+        String postId = post.getObjectId();
+        post.revert(Post.KEY_LIKES);
+        post.revert(Post.KEY_LIKE_COUNT);
+
+        // Toggles made during the failed save assumed it would succeed
+        PendingLike laterLike = mPendingLikes.get(postId);
+        if(laterLike != null) {
+            laterLike.baseLiked = pendingLike.baseLiked;
+        } else {
+            mLikedPostsIndex.setLiked(postId, pendingLike.baseLiked);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.instagramclone;
+
+import android.util.Log;
+
+import com.parse.FindCallback;
+import com.parse.ParseException;
+import com.parse.ParseQuery;
+import com.parse.ParseUser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *  LikedPostsIndex holds the objectIds of every post the current user has
+ *  liked. It is loaded once per session and kept up to date as the user
+ *  likes and unlikes posts, so checking whether a post is liked is a hashed
+ *  lookup that does not need the post's list of likes at all. Specifically,
+ *  this class handles the following features:
+ *      - Querying the Parse database for the objectIds of the posts the
+ *      current user liked, a large page at a time
+ *      - Answering whether the current user liked a post in constant time
+ *      - Keeping the likes and unlikes made while the index is loading on
+ *      top of what the server returned, which may be from before them
+ *      - Notifying listeners, e.g. adapters showing like buttons, when the
+ *      index has finished loading and when the like state of a post changes
+ *      - Forgetting everything when the user logs out
+ *  All methods are meant to be called from the main thread.
+ */
+public class LikedPostsIndex {
+
+    public static final String TAG = LikedPostsIndex.class.getSimpleName();
+
+    // Only objectIds are downloaded, so a page can be the largest one Parse allows
+    private static final int PAGE_SIZE = 1000;
+
+    /**
+     *  Listener for changes to the index, e.g. to refresh the like buttons on screen
+     */
+    public interface Listener {
+        // Called when the like state of a single post changed
+        void onLikedStateChanged(String postId);
+
+        // Called when the whole index changed, i.e. it finished loading or was cleared
+        void onIndexChanged();
+    }
+
+    private static LikedPostsIndex sInstance;
+
+    private final Set<String> mLikedPostIds = new HashSet<>();
+    // The pages loaded so far, which become the index once the last one arrived
+    private final Set<String> mLoadingPostIds = new HashSet<>();
+    // Like states set while loading, by post objectId. They are newer than the loaded pages
+    private final Map<String, Boolean> mChangedWhileLoading = new HashMap<>();
+    private final List<Listener> mListeners = new ArrayList<>();
+    // The user the index was loaded for, or null if it has not been loaded
+    private String mLoadedUserId;
+    private boolean mLoading;
+    // Incremented on every load and clear so callbacks of earlier loads can be ignored
+    private int mGeneration;
+
+    private LikedPostsIndex() {}
+
+    public static LikedPostsIndex get() {
+        if(sInstance == null) {
+            sInstance = new LikedPostsIndex();
+        }
+        return sInstance;
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    // Whether the index holds the liked posts of the current user. Until then isLiked only knows
+    // the posts liked in this session
+    public boolean isLoaded() {
+        ParseUser currentUser = ParseUser.getCurrentUser();
+        return currentUser != null && currentUser.getObjectId().equals(mLoadedUserId);
+    }
+
+    public boolean isLiked(String postId) {
+        return postId != null && mLikedPostIds.contains(postId);
+    }
+
+    public void setLiked(String postId, boolean liked) {
+        if(mLoading) {
+            mChangedWhileLoading.put(postId, liked);
+        }
+        boolean changed = liked ? mLikedPostIds.add(postId) : mLikedPostIds.remove(postId);
+        if(changed) {
+            for(Listener listener : new ArrayList<>(mListeners)) {
+                listener.onLikedStateChanged(postId);
+            }
+        }
+    }
+
+    // Loads the liked posts of the current user unless they are already loaded or loading
+    public void load() {
+        ParseUser currentUser = ParseUser.getCurrentUser();
+        if(currentUser == null || mLoading || currentUser.getObjectId().equals(mLoadedUserId)) {
+            return;
+        }
+        mLoading = true;
+        mGeneration++;
+        mLikedPostIds.clear();
+        mLoadingPostIds.clear();
+        mChangedWhileLoading.clear();
+        loadPage(currentUser, null, mGeneration);
+    }
+
+    // Forgets the liked posts, e.g. when the user logs out
+    public void clear() {
+        mLikedPostIds.clear();
+        mLoadingPostIds.clear();
+        mChangedWhileLoading.clear();
+        mLoadedUserId = null;
+        mLoading = false;
+        mGeneration++;
+        notifyIndexChanged();
+    }
+
+    // Pages through the liked posts in objectId order, continuing after the given objectId
+    private void loadPage(final ParseUser user, String afterPostId, final int generation) {
+        ParseQuery<Post> query = ParseQuery.getQuery(Post.class);
+        query.whereEqualTo(Post.KEY_LIKES, user);
+        if(afterPostId != null) {
+            query.whereGreaterThan(Post.KEY_OBJECT_ID, afterPostId);
+        }
+        query.selectKeys(Collections.singletonList(Post.KEY_OBJECT_ID));
+        query.orderByAscending(Post.KEY_OBJECT_ID);
+        query.setLimit(PAGE_SIZE);
+        query.findInBackground(new FindCallback<Post>() {
+            @Override
+            public void done(List<Post> posts, ParseException e) {
+                // The user logged out or another user logged in while this page was loading
+                if(generation != mGeneration) {
+                    return;
+                }
+                if(e != null) {
+                    Log.e(TAG, "Issue with getting liked posts", e);
+                    mLoading = false;
+                    mLoadingPostIds.clear();
+                    mChangedWhileLoading.clear();
+                    return;
+                }
+                for(Post post : posts) {
+                    mLoadingPostIds.add(post.getObjectId());
+                }
+                if(posts.size() == PAGE_SIZE) {
+                    loadPage(user, posts.get(posts.size() - 1).getObjectId(), generation);
+                    return;
+                }
+                mLoading = false;
+                mLoadedUserId = user.getObjectId();
+                mLikedPostIds.clear();
+                mLikedPostIds.addAll(mLoadingPostIds);
+                for(Map.Entry<String, Boolean> change : mChangedWhileLoading.entrySet()) {
+                    if(change.getValue()) {
+                        mLikedPostIds.add(change.getKey());
+                    } else {
+                        mLikedPostIds.remove(change.getKey());
+                    }
+                }
+                mLoadingPostIds.clear();
+                mChangedWhileLoading.clear();
+                notifyIndexChanged();
+            }
+        });
+    }
+
+    private void notifyIndexChanged() {
+        for(Listener listener : new ArrayList<>(mListeners)) {
+            listener.onIndexChanged();
+        }
+    }
+}
@@ -10,6 +10,7 @@ import android.widget.Button;
 import android.widget.EditText;
 import android.widget.Toast;
 
+import com.example.instagramclone.metrics.StartupMetrics;
 import com.parse.LogInCallback;
 import com.parse.ParseException;
 import com.parse.ParseUser;
@@ -28,7 +29,9 @@ import com.parse.SignUpCallback;
  *      - Allowing users to register for a new account by creating a new
  *      account for them within the Parse database on a button press
  *      - Navigating to the "home" screen when login or registration is
- *      successful
+ *      successful, while the first page of the feed is already being queried
+ *      - Sending users that are already logged in straight to the "home"
+ *      screen, without inflating the login screen
  */
 public class LoginActivity extends AppCompatActivity {
 
@@ -42,12 +45,18 @@ public class LoginActivity extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_login);
 
-        // Check to see if user has already been logged in to avoid asking to login again
+        // Check to see if user has already been logged in to avoid asking to login again. Checked
+        // before the login screen is inflated, which a logged in user never sees
         if(ParseUser.getCurrentUser() != null) {
+            // Read the feed stored on the device while the main activity starts
+            PostRepository.get(this).preloadStored(PostRepository.homeFeed(), null);
             goMainActivity();
+            return;
         }
+        // The time until the first post now depends on the user, so it is not measured
+        StartupMetrics.cancel();
+        setContentView(R.layout.activity_login);
 
         // Grab references to different components of the login view
         mLoginButton = findViewById(R.id.buttonLogin);
@@ -89,7 +98,9 @@ public class LoginActivity extends AppCompatActivity {
                     Toast.makeText(LoginActivity.this, "Issue with login!", Toast.LENGTH_LONG).show();
                     return;
                 }
-                // Navigate to Main Activity if user signed in successfully
+                // Navigate to Main Activity if user signed in successfully, with the feed already
+                // being queried now that there is a session
+                PostRepository.get(LoginActivity.this).prefetch(PostRepository.homeFeed(), null);
                 goMainActivity();
                 Toast.makeText(LoginActivity.this, "Successful Login!", Toast.LENGTH_LONG).show();
             }
@@ -110,7 +121,9 @@ public class LoginActivity extends AppCompatActivity {
                     return;
                 }
                 Toast.makeText(LoginActivity.this, "Successful Registration!", Toast.LENGTH_LONG).show();
-                // Navigate to Main Activity if user registered successfully
+                // Navigate to Main Activity if user registered successfully, with the feed already
+                // being queried now that there is a session
+                PostRepository.get(LoginActivity.this).prefetch(PostRepository.homeFeed(), null);
                 goMainActivity();
             }
         });
@@ -5,8 +5,10 @@ import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 import androidx.core.content.FileProvider;
+import androidx.core.view.ViewCompat;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
+import androidx.fragment.app.FragmentTransaction;
 
 import android.content.Intent;
 import android.graphics.Bitmap;
@@ -14,6 +16,8 @@ import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.provider.MediaStore;
 import android.text.format.DateUtils;
 import android.util.Log;
@@ -27,8 +31,10 @@ import android.widget.ImageView;
 import android.widget.Toast;
 
 import com.example.instagramclone.fragments.ComposeFragment;
+import com.example.instagramclone.fragments.DiagnosticsFragment;
 import com.example.instagramclone.fragments.PostsFragment;
 import com.example.instagramclone.fragments.ProfileFragment;
+import com.example.instagramclone.metrics.MetricsOverlay;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.parse.FindCallback;
 import com.parse.ParseFile;
@@ -51,13 +57,23 @@ import java.util.Locale;
  *      of the app to go to those different screens
  *      - Displaying the correct toolbar with the "Instagram" logo and other
  *      action menu icons
+ *      - Keeping every tab alive once it was opened, hidden while another tab
+ *      is shown, so it keeps its posts and scroll position
  */
 public class MainActivity extends AppCompatActivity {
 
     public static final String TAG = MainActivity.class.getSimpleName();
 
+    private static final String TAG_HOME = "home";
+    private static final String TAG_COMPOSE = "compose";
+    private static final String TAG_PROFILE = "profile";
+    private static final String KEY_ACTIVE_TAB = "active_tab";
+
     final FragmentManager fragmentManager = getSupportFragmentManager();
     private BottomNavigationView mBottomNavigationView;
+    // The tab currently shown. The other tabs are hidden rather than destroyed, so they keep their
+    // posts and scroll position
+    private Fragment mActiveTab;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -67,29 +83,132 @@ public class MainActivity extends AppCompatActivity {
         Toolbar toolbar = findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
 
+        // Not needed for the first frame of the feed, so it waits until the main thread is idle
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                onIdleAfterCreate();
+                return false;
+            }
+        });
+
         mBottomNavigationView = findViewById(R.id.bottom_navigation);
         mBottomNavigationView.setItemIconTintList(null);
+
         mBottomNavigationView.setOnNavigationItemSelectedListener(new BottomNavigationView.OnNavigationItemSelectedListener() {
             @Override
             public boolean onNavigationItemSelected(@NonNull MenuItem menuItem) {
-                Fragment fragment;
                 switch(menuItem.getItemId()) {
                     case R.id.action_compose:
-                        fragment = new ComposeFragment();
+                        showTab(TAG_COMPOSE);
                         break;
                     case R.id.action_profile:
-                        fragment = new ProfileFragment();
+                        showTab(TAG_PROFILE);
                         break;
                     default:
-                        fragment = new PostsFragment();
+                        showTab(TAG_HOME);
                         break;
                 }
-                fragmentManager.beginTransaction().replace(R.id.frameLayoutContainer, fragment).commit();
                 return true;
             }
         });
-        // Set a default selection as a home icon
-        mBottomNavigationView.setSelectedItemId(R.id.action_home);
+        if(savedInstanceState == null) {
+            // Set a default selection as a home icon
+            mBottomNavigationView.setSelectedItemId(R.id.action_home);
+        } else {
+            // The fragment manager restored the tabs. The active one may be hidden too, e.g. under
+            // the details screen, so it is looked up by the tag saved for it
+            String activeTag = savedInstanceState.getString(KEY_ACTIVE_TAB);
+            if(activeTag != null) {
+                mActiveTab = fragmentManager.findFragmentByTag(activeTag);
+            }
+        }
+    }
+
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if(mActiveTab != null) {
+            outState.putString(KEY_ACTIVE_TAB, mActiveTab.getTag());
+        }
+    }
+
+    private void onIdleAfterCreate() {
+        if(isFinishing()) {
+            return;
+        }
+        // Load the posts the user liked once for the session. Like buttons update once it has loaded
+        LikedPostsIndex.get().load();
+        // Give the posts whose upload gave up in an earlier session another chance. This is also
+        // what starts WorkManager
+        PostOutbox.get(this).retryFailed();
+        // Show how the lists perform on top of the screen in debug builds. Tap it to export the numbers
+        if(BuildConfig.DEBUG) {
+            MetricsOverlay.attach(this);
+        }
+    }
+
+    // Goes to a tab as if the user tapped it in the bottom navigation bar
+    public void selectTab(int itemId) {
+        mBottomNavigationView.setSelectedItemId(itemId);
+    }
+
+    // Shows the details screen on top of the current tab. Going back returns to the tab as it was
+    public void showDetails(Fragment fragment, View sharedElement) {
+        FragmentTransaction transaction = fragmentManager.beginTransaction();
+        if(mActiveTab != null) {
+            transaction.hide(mActiveTab);
+        }
+        // The view moves over to the details screen, which waits for its picture before it does
+        transaction.setReorderingAllowed(true)
+                .addSharedElement(sharedElement, ViewCompat.getTransitionName(sharedElement))
+                .add(R.id.frameLayoutContainer, fragment)
+                .addToBackStack(null)
+                .commit();
+    }
+
+    // Shows a screen on top of the current tab, e.g. the diagnostics. Going back returns to the tab
+    public void showScreen(Fragment fragment) {
+        FragmentTransaction transaction = fragmentManager.beginTransaction();
+        if(mActiveTab != null) {
+            transaction.hide(mActiveTab);
+        }
+        transaction.add(R.id.frameLayoutContainer, fragment)
+                .addToBackStack(null)
+                .commit();
+    }
+
+    // Shows the tab with the tag, creating it the first time, and hides the current one
+    private void showTab(String tag) {
+        // Leave any details screen opened from the current tab
+        fragmentManager.popBackStackImmediate(null, FragmentManager.POP_BACK_STACK_INCLUSIVE);
+        Fragment tab = fragmentManager.findFragmentByTag(tag);
+        if(tab != null && tab == mActiveTab) {
+            return;
+        }
+        FragmentTransaction transaction = fragmentManager.beginTransaction();
+        if(mActiveTab != null) {
+            transaction.hide(mActiveTab);
+        }
+        if(tab == null) {
+            tab = createTab(tag);
+            transaction.add(R.id.frameLayoutContainer, tab, tag);
+        } else {
+            transaction.show(tab);
+        }
+        transaction.commit();
+        mActiveTab = tab;
+    }
+
+    private static Fragment createTab(String tag) {
+        switch(tag) {
+            case TAG_COMPOSE:
+                return new ComposeFragment();
+            case TAG_PROFILE:
+                return new ProfileFragment();
+            default:
+                return new PostsFragment();
+        }
     }
 
     @Override
@@ -98,4 +217,13 @@ public class MainActivity extends AppCompatActivity {
         getMenuInflater().inflate(R.menu.main, menu);
         return true;
     }
+
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+        if(item.getItemId() == R.id.action_diagnostics) {
+            showScreen(new DiagnosticsFragment());
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
 }
\ No newline at end of file
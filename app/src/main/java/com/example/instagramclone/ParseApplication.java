@@ -1,29 +1,160 @@
 package com.example.instagramclone;
 
 import android.app.Application;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.Log;
 
+import androidx.annotation.NonNull;
+import androidx.work.Configuration;
+
+import com.example.instagramclone.metrics.NetworkMetricsInterceptor;
+import com.example.instagramclone.metrics.StartupMetrics;
 import com.parse.Parse;
 import com.parse.ParseObject;
 
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.logging.HttpLoggingInterceptor;
+
 /**
  *  ParseApplication is a subclass of {@link Application}. It handles the
  *  setup from the client-side to allow successful communication between
- *  the current InstagramClone app client and the Parse database
+ *  the current InstagramClone app client and the Parse database. It also
+ *  configures WorkManager, which uploads the posts in the {@link PostOutbox}.
+ *  Only what the first screen needs runs right away. Everything else waits
+ *  until the main thread is idle, and the connection to the Parse server is
+ *  opened in the background while the first screen starts.
  */
-public class ParseApplication extends Application {
+public class ParseApplication extends Application implements Configuration.Provider {
+
+    public static final String TAG = ParseApplication.class.getSimpleName();
+
+    // Uploads run at most this many at a time, so a full outbox does not saturate the network
+    private static final int MAX_CONCURRENT_UPLOADS = 2;
+    static final String SERVER_URL = "https://pablo-parstagram.herokuapp.com/parse/";
+    // should correspond to APP_ID env variable
+    static final String APPLICATION_ID = "pablo-parstagram";
+    // set explicitly unless clientKey is explicitly configured on Parse server
+    static final String CLIENT_KEY = "pablogarza917parstagramfbu2020";
+    // The query string of a login URL, which holds the username and password
+    private static final Pattern LOGIN_QUERY = Pattern.compile("(/login)\\?\\S*");
+
+    // Client every other client is derived from with newBuilder(), so they all share its connection
+    // pool and TLS socket factory. A connection is only reused by a client with the same factory
+    private static OkHttpClient sBaseClient;
+    // Client with the same interceptors as the one Parse uses, so the requests the app sends itself
+    // show up on the diagnostics screen and in the log too
+    private static OkHttpClient sMeteredClient;
+
     @Override
     public void onCreate() {
         super.onCreate();
+        StartupMetrics.onProcessStart();
 
         // Registering our Parse model
         ParseObject.registerSubclass(Post.class);
 
+        // The metrics interceptor measures the latency, size and retries of every request, per
+        // endpoint, for the diagnostics screen
+        NetworkMetricsInterceptor networkMetrics = NetworkMetricsInterceptor.get();
+        sBaseClient = new OkHttpClient();
+        OkHttpClient.Builder clientBuilder = sBaseClient.newBuilder()
+                .addInterceptor(networkMetrics.applicationInterceptor())
+                .addNetworkInterceptor(networkMetrics.networkInterceptor());
+        if(BuildConfig.DEBUG) {
+            HttpLoggingInterceptor loggingInterceptor = new HttpLoggingInterceptor(new HttpLoggingInterceptor.Logger() {
+                @Override
+                public void log(@NonNull String message) {
+                    Log.d(TAG, redactLogin(message));
+                }
+            });
+            loggingInterceptor.setLevel(HttpLoggingInterceptor.Level.BASIC);
+            clientBuilder.addInterceptor(loggingInterceptor);
+        }
+        sMeteredClient = clientBuilder.build();
+
         // set applicationId, and server server based on the values in the Heroku settings.
         // clientKey is not needed unless explicitly configured
         // any network interceptors must be added with the Configuration Builder given this syntax
+        // The local datastore keeps the first page of each feed on the device, see PostStore
         Parse.initialize(new Parse.Configuration.Builder(this)
-                .applicationId("pablo-parstagram") // should correspond to APP_ID env variable
-                .clientKey("pablogarza917parstagramfbu2020")  // set explicitly unless clientKey is explicitly configured on Parse server
-                .server("https://pablo-parstagram.herokuapp.com/parse/").build());
+                .enableLocalDataStore()
+                .clientBuilder(clientBuilder)
+                .applicationId(APPLICATION_ID)
+                .clientKey(CLIENT_KEY)
+                .server(SERVER_URL).build());
+
+        warmUpConnection();
+
+        // Not needed for the first frame
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                registerTimeFormatReceiver();
+                return false;
+            }
+        });
+    }
+
+    // Parse logs in with GET /parse/login?username=...&password=..., so the query of a login URL
+    // is left out of the log
+    private static String redactLogin(String message) {
+        return LOGIN_QUERY.matcher(message).replaceAll("$1?<redacted>");
+    }
+
+    // Client sharing connections and interceptors with the one Parse uses, for requests to the Parse
+    // server that do not go through the Parse SDK
+    public static OkHttpClient getMeteredClient() {
+        return sMeteredClient;
+    }
+
+    // Opens a connection to the Parse server in the background, so the first query does not also
+    // have to wait for the TCP and TLS handshakes. The connection goes back to the shared pool,
+    // where the client Parse uses picks it up
+    private void warmUpConnection() {
+        Request request = new Request.Builder().url(SERVER_URL + "health").build();
+        sBaseClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                Log.d(TAG, "Issue with warming up the connection", e);
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                response.close();
+            }
+        });
+    }
+
+    // Timestamps are cached per time zone and language, so forget them when either changes
+    private void registerTimeFormatReceiver() {
+        IntentFilter timeFormatFilter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+        timeFormatFilter.addAction(Intent.ACTION_LOCALE_CHANGED);
+        registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                RelativeTimeFormatter.get().reset();
+            }
+        }, timeFormatFilter);
+    }
+
+    @NonNull
+    @Override
+    public Configuration getWorkManagerConfiguration() {
+        return new Configuration.Builder()
+                .setExecutor(Executors.newFixedThreadPool(MAX_CONCURRENT_UPLOADS))
+                .build();
     }
 }
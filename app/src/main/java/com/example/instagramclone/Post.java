@@ -6,8 +6,9 @@ import com.parse.ParseFile;
 import com.parse.ParseObject;
 import com.parse.ParseUser;
 
-import org.parceler.Parcel;
-
+import java.io.File;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -24,8 +25,20 @@ public class Post extends ParseObject {
     public static final String KEY_IMAGE = "image";
     public static final String KEY_USER = "user";
     public static final String KEY_CREATED = "createdAt";
+    public static final String KEY_UPDATED = "updatedAt";
+    public static final String KEY_OBJECT_ID = "objectId";
     public static final String KEY_PROFILE_IMAGE = "profileImage";
+    public static final String KEY_USERNAME = "username";
     public static final String KEY_LIKES = "likes";
+    public static final String KEY_LIKE_COUNT = "likeCount";
+    public static final String KEY_OUTBOX_ID = "outboxId";
+
+    // Set only on posts that are still waiting in the PostOutbox to be uploaded. They are shown in
+    // the feeds but have no objectId, createdAt or image URL yet
+    private String mOutboxId;
+    private File mLocalImageFile;
+    private Date mQueuedAt;
+    private boolean mUploadFailed;
 
     public String getDescription() {
         return getString(KEY_DESCRIPTION);
@@ -51,4 +64,73 @@ public class Post extends ParseObject {
         put(KEY_USER, user);
     }
 
+    // Posts created before posts kept a like count have none until the backfillLikeCount job of
+    // the Cloud Code ran. A count is never shown below zero
+    public int getLikeCount() {
+        if(!has(KEY_LIKE_COUNT)) {
+            List<Object> likes = getList(KEY_LIKES);
+            return (likes == null) ? 0 : likes.size();
+        }
+        return Math.max(getInt(KEY_LIKE_COUNT), 0);
+    }
+
+    // Adds the user to the users that liked this post and atomically increments the like count
+    // on the server, so concurrent likes from other users are not overwritten. Likes from the UI
+    // go through the LikeWriteCoalescer, which calls this when it writes them
+    public void like(ParseUser user) {
+        addUnique(KEY_LIKES, user);
+        // Incrementing a missing count would store 1 whatever the array holds, so a post without
+        // a count gets it from the backfillLikeCount job on the server instead
+        if(has(KEY_LIKE_COUNT)) {
+            increment(KEY_LIKE_COUNT);
+        }
+    }
+
+    // Removes the user from the users that liked this post and atomically decrements the like count
+    public void unlike(ParseUser user) {
+        removeAll(KEY_LIKES, Collections.singletonList(user));
+        if(has(KEY_LIKE_COUNT)) {
+            increment(KEY_LIKE_COUNT, -1);
+        }
+    }
+
+    // Starts the like count of a new post at zero, so its likes are counted from the first one
+    public void initLikeCount() {
+        put(KEY_LIKE_COUNT, 0);
+    }
+
+    // Stores the id the post had in the PostOutbox, so an upload that is retried after its save
+    // reached the server finds the post instead of saving it twice
+    public void setOutboxId(String outboxId) {
+        put(KEY_OUTBOX_ID, outboxId);
+    }
+
+    // Marks this post as a pending post of the outbox, with its image still on the device
+    void setPending(String outboxId, File localImageFile, Date queuedAt, boolean uploadFailed) {
+        this.mOutboxId = outboxId;
+        this.mLocalImageFile = localImageFile;
+        this.mQueuedAt = queuedAt;
+        this.mUploadFailed = uploadFailed;
+    }
+
+    public boolean isPending() {
+        return mOutboxId != null;
+    }
+
+    public String getOutboxId() {
+        return mOutboxId;
+    }
+
+    public File getLocalImageFile() {
+        return mLocalImageFile;
+    }
+
+    public Date getQueuedAt() {
+        return mQueuedAt;
+    }
+
+    public boolean isUploadFailed() {
+        return mUploadFailed;
+    }
+
 }
@@ -0,0 +1,45 @@
+package com.example.instagramclone;
+
+import android.graphics.drawable.Drawable;
+
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.RequestManager;
+
+import java.io.File;
+
+/**
+ *  PostImageRequests builds the Glide requests for the images shown with a
+ *  post. Rows and the {@link FeedImagePreloader} both build their requests
+ *  here, so a preloaded image is cached under exactly the key the row later
+ *  asks for and is taken from memory instead of being decoded again
+ */
+public class PostImageRequests {
+
+    private PostImageRequests() {}
+
+    // The picture of the post, cropped to fill its image view
+    public static RequestBuilder<Drawable> postImage(RequestManager glide, String url) {
+        return glide.load(url).centerCrop();
+    }
+
+    // The picture of a post that is still waiting in the outbox, read from the device
+    public static RequestBuilder<Drawable> postImage(RequestManager glide, File localFile) {
+        return glide.load(localFile).centerCrop();
+    }
+
+    // The profile picture of the post's creator, cropped to a circle
+    public static RequestBuilder<Drawable> profileImage(RequestManager glide, String url) {
+        return glide.load(url).circleCrop();
+    }
+
+    // The picture of a post as a square grid cell. It is decoded at exactly the cell size and
+    // without an alpha channel, as a thumbnail never needs more
+    public static RequestBuilder<Drawable> thumbnail(RequestManager glide, String url, int cellSize) {
+        return glide.load(url).centerCrop().override(cellSize).format(DecodeFormat.PREFER_RGB_565);
+    }
+
+    public static RequestBuilder<Drawable> thumbnail(RequestManager glide, File localFile, int cellSize) {
+        return glide.load(localFile).centerCrop().override(cellSize).format(DecodeFormat.PREFER_RGB_565);
+    }
+}
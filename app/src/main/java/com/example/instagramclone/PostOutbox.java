@@ -0,0 +1,639 @@
+package com.example.instagramclone;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+
+import com.parse.ParseDecoder;
+import com.parse.ParseException;
+import com.parse.ParseFile;
+import com.parse.ParseUser;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  PostOutbox holds the posts the user submitted that have not been saved to
+ *  the Parse database yet. Every post is written to the device before it is
+ *  uploaded, so it survives the app being killed or the network dropping,
+ *  and is uploaded by a {@link PostUploadWorker}. Specifically, this class
+ *  handles the following features:
+ *      - Keeping every pending post in a directory of its own, holding its
+ *      image and a small JSON file with its caption, creator and state
+ *      - Taking over the {@link ImageUpload} the compose screen started, so
+ *      an image that is already on the server is not uploaded again
+ *      - Scheduling the upload of every pending post once the device is
+ *      online, retrying with exponential backoff when it fails
+ *      - Handing the pending posts of the current user to the feeds, which
+ *      show them as rows of their own until the upload is confirmed
+ *      - Letting the user retry posts whose upload gave up
+ *      - Removing the pending posts of a user that logs out
+ */
+public class PostOutbox {
+
+    public static final String TAG = PostOutbox.class.getSimpleName();
+
+    // Tag shared by every upload, so they can all be cancelled at once
+    public static final String WORK_TAG = "post_upload";
+    private static final long BACKOFF_DELAY_SECONDS = 10;
+
+    private static final String OUTBOX_DIRECTORY = "outbox";
+    private static final String IMAGE_FILE_NAME = "image";
+    private static final String METADATA_FILE_NAME = "post.json";
+    private static final String KEY_DESCRIPTION = "description";
+    private static final String KEY_USER_ID = "userId";
+    private static final String KEY_QUEUED_AT = "queuedAt";
+    private static final String KEY_IMAGE_FILE = "imageFile";
+    private static final String KEY_FAILED = "failed";
+    private static final String KEY_UPLOADED_IMAGE_NAME = "uploadedImageName";
+    private static final String KEY_UPLOADED_IMAGE_URL = "uploadedImageUrl";
+    private static final String KEY_SAVE_STARTED = "saveStarted";
+
+    /**
+     *  A post waiting to be uploaded
+     */
+    public static class Entry {
+        public final String id;
+        public final String description;
+        public final String userId;
+        public final long queuedAt;
+        public final File imageFile;
+        // Whether the upload gave up, e.g. after the server refused the post several times
+        public final boolean failed;
+        // The image on the server, once it was uploaded, so only the post itself is left to save
+        @Nullable public final String uploadedImageName;
+        @Nullable public final String uploadedImageUrl;
+        // Whether a save of the post was sent, which may have reached the server even if it failed
+        public final boolean saveStarted;
+
+        Entry(String id, String description, String userId, long queuedAt, File imageFile, boolean failed,
+              @Nullable String uploadedImageName, @Nullable String uploadedImageUrl, boolean saveStarted) {
+            this.id = id;
+            this.description = description;
+            this.userId = userId;
+            this.queuedAt = queuedAt;
+            this.imageFile = imageFile;
+            this.failed = failed;
+            this.uploadedImageName = uploadedImageName;
+            this.uploadedImageUrl = uploadedImageUrl;
+            this.saveStarted = saveStarted;
+        }
+
+        Entry withFailed(boolean failed) {
+            return new Entry(id, description, userId, queuedAt, imageFile, failed, uploadedImageName,
+                    uploadedImageUrl, saveStarted);
+        }
+
+        Entry withUploadedImage(ParseFile image) {
+            return new Entry(id, description, userId, queuedAt, imageFile, failed, image.getName(),
+                    image.getUrl(), saveStarted);
+        }
+
+        Entry withSaveStarted() {
+            return new Entry(id, description, userId, queuedAt, imageFile, failed, uploadedImageName,
+                    uploadedImageUrl, true);
+        }
+
+        // The image on the server, or null if it was not uploaded yet
+        @Nullable
+        ParseFile getUploadedImage() {
+            if(uploadedImageName == null || uploadedImageUrl == null) {
+                return null;
+            }
+            JSONObject json = new JSONObject();
+            try {
+                json.put("__type", "File");
+                json.put("name", uploadedImageName);
+                json.put("url", uploadedImageUrl);
+            } catch (JSONException e) {
+                return null;
+            }
+            return (ParseFile) ParseDecoder.get().decode(json);
+        }
+    }
+
+    /**
+     *  Listener for changes to the outbox, called on the main thread
+     */
+    public interface Listener {
+        // A post was added, gave up or was retried
+        void onPendingPostsChanged();
+
+        // A pending post was saved to the database and removed from the outbox
+        void onPostUploaded(String objectId);
+    }
+
+    /**
+     *  Callback for enqueue, called on the main thread
+     */
+    public interface EnqueueCallback {
+        // e is null if the post is stored on the device and its upload is scheduled
+        void done(@Nullable IOException e);
+    }
+
+    private static PostOutbox sInstance;
+
+    private final Context mContext;
+    private final File mDirectory;
+    // Pending posts by id, oldest first, loaded from the device once in the background
+    private final Map<String, Entry> mEntries = new LinkedHashMap<>();
+    // Counted down once the pending posts were loaded from the device
+    private final CountDownLatch mLoaded = new CountDownLatch(1);
+    // Work that needs every pending post, waiting for them to be loaded. Only used on the main thread
+    private final List<Runnable> mWhenLoaded = new ArrayList<>();
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+    // Image uploads the compose screen started that are still running, by the id of their post
+    private final Map<String, ImageUpload> mImageUploads = new HashMap<>();
+
+    private PostOutbox(Context context) {
+        mContext = context.getApplicationContext();
+        mDirectory = new File(mContext.getFilesDir(), OUTBOX_DIRECTORY);
+        // The first call comes from a feed being created on the main thread, which should not wait
+        // for directories to be listed and files to be parsed
+        AppExecutors.get().background().execute(new Runnable() {
+            @Override
+            public void run() {
+                loadEntries();
+            }
+        });
+    }
+
+    public static synchronized PostOutbox get(Context context) {
+        if(sInstance == null) {
+            sInstance = new PostOutbox(context);
+        }
+        return sInstance;
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    // Writes the post to the device in the background and schedules its upload. The image file is
+    // moved into the outbox, so the caller must not use it afterwards unless the callback reports
+    // an error. The upload of the image the caller already started, if any, is taken over, so the
+    // image is only uploaded again if that upload fails
+    public void enqueue(final String description, final File imageFile, @Nullable final ImageUpload imageUpload,
+                        final EnqueueCallback callback) {
+        final String id = UUID.randomUUID().toString();
+        final String userId = ParseUser.getCurrentUser().getObjectId();
+        AppExecutors.get().background().execute(new Runnable() {
+            @Override
+            public void run() {
+                Entry entry = null;
+                IOException error = null;
+                try {
+                    // Loading would drop a post it found only partly written
+                    awaitLoaded();
+                    entry = writeEntry(id, description, userId, imageFile, imageUpload);
+                } catch (IOException e) {
+                    deleteEntry(id);
+                    error = e;
+                } catch (InterruptedException e) {
+                    error = new IOException(e);
+                }
+                final Entry storedEntry = entry;
+                final IOException storeError = error;
+                AppExecutors.get().mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(storeError != null) {
+                            callback.done(storeError);
+                            return;
+                        }
+                        synchronized(PostOutbox.this) {
+                            mEntries.put(id, storedEntry);
+                        }
+                        if(imageUpload != null && storedEntry.uploadedImageUrl == null) {
+                            takeOverImageUpload(id, imageUpload);
+                        }
+                        scheduleUpload(id);
+                        notifyPendingPostsChanged();
+                        callback.done(null);
+                    }
+                });
+            }
+        });
+    }
+
+    // The pending posts of the current user, newest first, as posts the feeds can show
+    public List<Post> getPendingPosts() {
+        List<Post> posts = new ArrayList<>();
+        ParseUser currentUser = ParseUser.getCurrentUser();
+        if(currentUser == null) {
+            return posts;
+        }
+        for(Entry entry : getEntries()) {
+            if(!currentUser.getObjectId().equals(entry.userId)) {
+                continue;
+            }
+            Post post = new Post();
+            post.setDescription(entry.description);
+            post.setUser(currentUser);
+            post.setPending(entry.id, entry.imageFile, new Date(entry.queuedAt), entry.failed);
+            posts.add(0, post);
+        }
+        return posts;
+    }
+
+    // Schedules the upload of every post that gave up, e.g. when the app is opened again
+    public void retryFailed() {
+        whenLoaded(new Runnable() {
+            @Override
+            public void run() {
+                retryFailedEntries();
+            }
+        });
+    }
+
+    private void retryFailedEntries() {
+        boolean changed = false;
+        for(Entry entry : getEntries()) {
+            if(entry.failed) {
+                updateEntry(entry.withFailed(false));
+                scheduleUpload(entry.id);
+                changed = true;
+            }
+        }
+        if(changed) {
+            notifyPendingPostsChanged();
+        }
+    }
+
+    // Cancels every upload and deletes every pending post, e.g. when the user logs out
+    public void clear() {
+        WorkManager.getInstance(mContext).cancelAllWorkByTag(WORK_TAG);
+        synchronized(this) {
+            for(ImageUpload imageUpload : mImageUploads.values()) {
+                imageUpload.cancel();
+            }
+            mImageUploads.clear();
+        }
+        whenLoaded(new Runnable() {
+            @Override
+            public void run() {
+                for(Entry entry : getEntries()) {
+                    deleteEntry(entry.id);
+                }
+                notifyPendingPostsChanged();
+            }
+        });
+    }
+
+    // Blocks until the pending posts were loaded from the device. Must not be called on the main
+    // thread, e.g. it is called by the upload worker before it looks up its post
+    void awaitLoaded() throws InterruptedException {
+        mLoaded.await();
+    }
+
+    synchronized Entry getEntry(String id) {
+        return mEntries.get(id);
+    }
+
+    // Called by the upload worker before it uploads the image of the post. Waits for the upload the
+    // compose screen started, if it is still running, and returns the image if it is on the server
+    @Nullable
+    ParseFile awaitUploadedImage(String id) throws InterruptedException {
+        ImageUpload imageUpload;
+        synchronized(this) {
+            imageUpload = mImageUploads.get(id);
+        }
+        if(imageUpload != null) {
+            ParseFile image = imageUpload.await();
+            synchronized(this) {
+                mImageUploads.remove(id);
+            }
+            if(image != null) {
+                return image;
+            }
+        }
+        Entry entry = getEntry(id);
+        return (entry == null) ? null : entry.getUploadedImage();
+    }
+
+    // Called once the image of the post is on the server, so a retry only saves the post itself
+    synchronized void onImageUploaded(String id, ParseFile image) {
+        Entry entry = getEntry(id);
+        if(entry != null && entry.uploadedImageUrl == null) {
+            updateEntry(entry.withUploadedImage(image));
+        }
+    }
+
+    // Called by the upload worker right before it sends the save of the post
+    void onSaveStarted(String id) {
+        Entry entry = getEntry(id);
+        if(entry != null && !entry.saveStarted) {
+            updateEntry(entry.withSaveStarted());
+        }
+    }
+
+    // Called by the upload worker once the post was saved to the database
+    void onUploaded(String id, final String objectId) {
+        Entry entry = getEntry(id);
+        if(entry != null) {
+            // The creator has one more post than their cached post count says
+            ProfileStats.get(mContext).invalidate(entry.userId);
+        }
+        deleteEntry(id);
+        AppExecutors.get().mainThread().execute(new Runnable() {
+            @Override
+            public void run() {
+                for(Listener listener : mListeners) {
+                    listener.onPostUploaded(objectId);
+                }
+            }
+        });
+    }
+
+    // Called by the upload worker when it gave up on the post
+    void onUploadFailed(String id) {
+        Entry entry = getEntry(id);
+        if(entry == null) {
+            return;
+        }
+        updateEntry(entry.withFailed(true));
+        notifyPendingPostsChanged();
+    }
+
+    // Called by the upload worker when the post can never be uploaded, e.g. its image is gone
+    void discard(String id) {
+        deleteEntry(id);
+        notifyPendingPostsChanged();
+    }
+
+    private void scheduleUpload(String id) {
+        // Only try while online, and back off further after every failed attempt
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(PostUploadWorker.class)
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BACKOFF_DELAY_SECONDS, TimeUnit.SECONDS)
+                .setInputData(new Data.Builder().putString(PostUploadWorker.KEY_ENTRY_ID, id).build())
+                .addTag(WORK_TAG)
+                .build();
+        // An upload that is already scheduled for the post is kept, so it is never saved twice
+        WorkManager.getInstance(mContext).enqueueUniqueWork(WORK_TAG + "_" + id, ExistingWorkPolicy.KEEP, request);
+    }
+
+    private void takeOverImageUpload(final String id, final ImageUpload imageUpload) {
+        synchronized(this) {
+            mImageUploads.put(id, imageUpload);
+        }
+        imageUpload.setListener(new ImageUpload.Listener() {
+            @Override
+            public void onProgress(int percentDone) {}
+
+            @Override
+            public void onDone(ParseException e) {
+                synchronized(PostOutbox.this) {
+                    mImageUploads.remove(id);
+                }
+                recordUploadedImage(id, imageUpload);
+            }
+        });
+        // The upload may have finished while the post was being written to the device
+        if(imageUpload.isDone()) {
+            synchronized(this) {
+                mImageUploads.remove(id);
+            }
+            recordUploadedImage(id, imageUpload);
+        }
+    }
+
+    // Writes the image of a finished upload to the entry, off the main thread
+    private void recordUploadedImage(final String id, ImageUpload imageUpload) {
+        final ParseFile image = imageUpload.getUploadedImage();
+        if(image == null) {
+            return;
+        }
+        AppExecutors.get().background().execute(new Runnable() {
+            @Override
+            public void run() {
+                onImageUploaded(id, image);
+            }
+        });
+    }
+
+    // Creates the directory of the entry, moves the image into it and writes its metadata
+    private Entry writeEntry(String id, String description, String userId, File imageFile,
+                             @Nullable ImageUpload imageUpload) throws IOException {
+        File entryDirectory = new File(mDirectory, id);
+        if(!entryDirectory.mkdirs()) {
+            throw new IOException("Could not create " + entryDirectory);
+        }
+        String extension = imageFile.getName().substring(Math.max(0, imageFile.getName().lastIndexOf('.')));
+        File storedImage = new File(entryDirectory, IMAGE_FILE_NAME + extension);
+        move(imageFile, storedImage);
+
+        Entry entry = new Entry(id, description, userId, System.currentTimeMillis(), storedImage, false,
+                null, null, false);
+        ParseFile uploadedImage = (imageUpload == null) ? null : imageUpload.getUploadedImage();
+        if(uploadedImage != null) {
+            entry = entry.withUploadedImage(uploadedImage);
+        }
+        writeMetadata(entry);
+        return entry;
+    }
+
+    private synchronized List<Entry> getEntries() {
+        return new ArrayList<>(mEntries.values());
+    }
+
+    private void updateEntry(Entry entry) {
+        try {
+            writeMetadata(entry);
+        } catch (IOException e) {
+            Log.e(TAG, "Issue with updating pending post " + entry.id, e);
+        }
+        synchronized(this) {
+            mEntries.put(entry.id, entry);
+        }
+    }
+
+    private void deleteEntry(String id) {
+        synchronized(this) {
+            mEntries.remove(id);
+            ImageUpload imageUpload = mImageUploads.remove(id);
+            if(imageUpload != null) {
+                imageUpload.cancel();
+            }
+        }
+        File entryDirectory = new File(mDirectory, id);
+        File[] files = entryDirectory.listFiles();
+        if(files != null) {
+            for(File file : files) {
+                file.delete();
+            }
+        }
+        entryDirectory.delete();
+    }
+
+    private void notifyPendingPostsChanged() {
+        AppExecutors.get().mainThread().execute(new Runnable() {
+            @Override
+            public void run() {
+                for(Listener listener : mListeners) {
+                    listener.onPendingPostsChanged();
+                }
+            }
+        });
+    }
+
+    // Runs the work on the main thread once the pending posts were loaded, right away if they are
+    private void whenLoaded(Runnable work) {
+        if(mLoaded.getCount() == 0) {
+            work.run();
+        } else {
+            mWhenLoaded.add(work);
+        }
+    }
+
+    // Reads every pending post back from the device, dropping any that were only partly written,
+    // then runs the work that waited for them and shows them in the feeds
+    private void loadEntries() {
+        File[] entryDirectories = mDirectory.listFiles();
+        List<Entry> entries = new ArrayList<>();
+        for(File entryDirectory : (entryDirectories == null) ? new File[0] : entryDirectories) {
+            try {
+                JSONObject metadata = new JSONObject(readFile(new File(entryDirectory, METADATA_FILE_NAME)));
+                File imageFile = new File(entryDirectory, metadata.getString(KEY_IMAGE_FILE));
+                if(!imageFile.exists()) {
+                    throw new IOException("Missing image " + imageFile);
+                }
+                entries.add(new Entry(entryDirectory.getName(), metadata.getString(KEY_DESCRIPTION),
+                        metadata.getString(KEY_USER_ID), metadata.getLong(KEY_QUEUED_AT), imageFile,
+                        metadata.optBoolean(KEY_FAILED), metadata.optString(KEY_UPLOADED_IMAGE_NAME, null),
+                        metadata.optString(KEY_UPLOADED_IMAGE_URL, null), metadata.optBoolean(KEY_SAVE_STARTED)));
+            } catch (IOException | JSONException e) {
+                Log.e(TAG, "Dropping unreadable pending post " + entryDirectory.getName(), e);
+                deleteEntry(entryDirectory.getName());
+            }
+        }
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return Long.compare(a.queuedAt, b.queuedAt);
+            }
+        });
+        synchronized(this) {
+            for(Entry entry : entries) {
+                mEntries.put(entry.id, entry);
+            }
+        }
+        mLoaded.countDown();
+        AppExecutors.get().mainThread().execute(new Runnable() {
+            @Override
+            public void run() {
+                for(Runnable work : mWhenLoaded) {
+                    work.run();
+                }
+                mWhenLoaded.clear();
+                for(Listener listener : mListeners) {
+                    listener.onPendingPostsChanged();
+                }
+            }
+        });
+    }
+
+    // Writes the metadata to a temporary file first, so a crash never leaves a half-written file
+    private void writeMetadata(Entry entry) throws IOException {
+        JSONObject metadata = new JSONObject();
+        try {
+            metadata.put(KEY_DESCRIPTION, entry.description);
+            metadata.put(KEY_USER_ID, entry.userId);
+            metadata.put(KEY_QUEUED_AT, entry.queuedAt);
+            metadata.put(KEY_IMAGE_FILE, entry.imageFile.getName());
+            metadata.put(KEY_FAILED, entry.failed);
+            // Null values are left out
+            metadata.put(KEY_UPLOADED_IMAGE_NAME, entry.uploadedImageName);
+            metadata.put(KEY_UPLOADED_IMAGE_URL, entry.uploadedImageUrl);
+            metadata.put(KEY_SAVE_STARTED, entry.saveStarted);
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+        File entryDirectory = new File(mDirectory, entry.id);
+        File temporary = new File(entryDirectory, METADATA_FILE_NAME + ".tmp");
+        OutputStream out = new FileOutputStream(temporary);
+        try {
+            out.write(metadata.toString().getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        if(!temporary.renameTo(new File(entryDirectory, METADATA_FILE_NAME))) {
+            throw new IOException("Could not write metadata of " + entry.id);
+        }
+    }
+
+    private static String readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            int read = 0;
+            while(read < bytes.length) {
+                int count = in.read(bytes, read, bytes.length - read);
+                if(count < 0) {
+                    break;
+                }
+                read += count;
+            }
+            return new String(bytes, 0, read, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    // The image usually lives on external storage, so it is copied rather than renamed
+    private static void move(File source, File destination) throws IOException {
+        if(source.renameTo(destination)) {
+            return;
+        }
+        InputStream in = new FileInputStream(source);
+        try {
+            OutputStream out = new FileOutputStream(destination);
+            try {
+                byte[] buffer = new byte[8192];
+                int count;
+                while((count = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, count);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        source.delete();
+    }
+}
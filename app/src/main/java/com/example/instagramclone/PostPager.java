@@ -0,0 +1,274 @@
+package com.example.instagramclone;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.parse.FindCallback;
+import com.parse.ParseException;
+import com.parse.ParseQuery;
+import com.parse.ParseUser;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ *  PostPager is the paging engine behind the lists of posts in the app. It
+ *  loads posts from the Parse database one page at a time, newest first, and
+ *  remembers where the last page ended so the next page can pick up from
+ *  there. Specifically, this class handles the following features:
+ *      - Querying the Parse database for a page of posts, optionally limited
+ *      to the posts of a single user
+ *      - Continuing from the last loaded post with a (createdAt, objectId)
+ *      cursor rather than a skip/offset, so every page costs the same to
+ *      query no matter how far down the feed the user has scrolled
+ *      - Ignoring duplicate "load more" requests while a page is in flight
+ *      and once the end of the posts has been reached
+ *      - Dropping results of stale requests after the pager has been reset
+ *      by a refresh
+ *      - Leaving out the array of users that liked each post, whose like
+ *      state is looked up in the {@link LikedPostsIndex} instead
+ *      - Selecting only the columns the feed shows, of the post and of its
+ *      included creator, and measuring how many bytes that saves
+ *      - Querying only the posts created or updated since a list was last
+ *      synced, so a refresh that changes nothing downloads next to nothing
+ */
+public class PostPager {
+
+    public static final String TAG = PostPager.class.getSimpleName();
+
+    public static final int PAGE_SIZE = 20;
+    // Most changes a single sync downloads. Getting this many means the list fell too far behind
+    // and should be reloaded in full instead
+    public static final int MAX_CHANGES = PAGE_SIZE;
+
+    // The columns of a post shown in the feed, and of its creator only the username and profile
+    // picture. The likes array is left out so the size of a page does not grow with the number of
+    // users that liked its posts. objectId, createdAt and updatedAt are always returned
+    private static final List<String> FEED_KEYS = Arrays.asList(Post.KEY_DESCRIPTION,
+            Post.KEY_IMAGE, Post.KEY_USER, Post.KEY_LIKE_COUNT,
+            Post.KEY_USER + "." + Post.KEY_USERNAME, Post.KEY_USER + "." + Post.KEY_PROFILE_IMAGE);
+
+    // The user whose posts are paged through, or null to page through every post
+    private final ParseUser mUser;
+
+    // Cursor pointing at the last post of the most recently loaded page
+    private Date mCursorCreatedAt;
+    private String mCursorObjectId;
+
+    private boolean mLoading;
+    private boolean mHasMore = true;
+    // Whether the newest page has been loaded, without which there is nothing to continue from,
+    // e.g. while offline and showing the posts stored on the device
+    private boolean mFirstPageLoaded;
+    // Incremented on every reset so callbacks of requests started before it can be ignored
+    private int mGeneration;
+
+    public PostPager(@Nullable ParseUser user) {
+        this.mUser = user;
+    }
+
+    // Forgets the cursor and loads the newest page of posts
+    public void loadFirstPage(FindCallback<Post> callback) {
+        mGeneration++;
+        mCursorCreatedAt = null;
+        mCursorObjectId = null;
+        mHasMore = true;
+        mFirstPageLoaded = false;
+        loadPage(callback);
+    }
+
+    // Loads the page following the last loaded one. Does nothing if a page is already being
+    // loaded, if the newest page has not loaded yet or if there are no more posts to load
+    public void loadNextPage(FindCallback<Post> callback) {
+        if(mLoading || !mFirstPageLoaded || !mHasMore) {
+            return;
+        }
+        loadPage(callback);
+    }
+
+    // Loads the posts created after the newest loaded post, and the loaded posts updated after the
+    // given time, e.g. because their likes changed. Hands at most MAX_CHANGES posts to the callback,
+    // newest first. The times should be the server's, taken from loaded posts, so the device clock
+    // never matters
+    public void loadChanges(Date newestCreatedAt, Date oldestCreatedAt, Date syncedAt, final FindCallback<Post> callback) {
+        final int generation = mGeneration;
+
+        ParseQuery<Post> newPosts = baseQuery();
+        newPosts.whereGreaterThan(Post.KEY_CREATED, newestCreatedAt);
+
+        ParseQuery<Post> updatedPosts = baseQuery();
+        updatedPosts.whereGreaterThanOrEqualTo(Post.KEY_CREATED, oldestCreatedAt);
+        updatedPosts.whereGreaterThan(Post.KEY_UPDATED, syncedAt);
+
+        List<ParseQuery<Post>> queries = new ArrayList<>();
+        queries.add(newPosts);
+        queries.add(updatedPosts);
+        ParseQuery<Post> query = ParseQuery.or(queries);
+        query.include(Post.KEY_USER);
+        query.selectKeys(FEED_KEYS);
+        query.setLimit(MAX_CHANGES);
+        query.orderByDescending(Post.KEY_CREATED);
+        query.addDescendingOrder(Post.KEY_OBJECT_ID);
+        query.findInBackground(new FindCallback<Post>() {
+            @Override
+            public void done(List<Post> posts, ParseException e) {
+                // A full reload started meanwhile, which already has these changes
+                if(generation != mGeneration) {
+                    return;
+                }
+                callback.done(posts, e);
+            }
+        });
+    }
+
+    public boolean isLoading() {
+        return mLoading;
+    }
+
+    public boolean hasMore() {
+        return mHasMore;
+    }
+
+    // Debug aid that loads the first page once with and once without field projection and logs
+    // the size of both responses. The pages are requested from the REST API directly, outside of
+    // Parse, so each size is read from its own response and never from another query for posts
+    public void logProjectionSavings() {
+        ParseUser currentUser = ParseUser.getCurrentUser();
+        if(currentUser == null) {
+            return;
+        }
+        final String sessionToken = currentUser.getSessionToken();
+        AppExecutors.get().background().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long unprojectedBytes = firstPageBytes(sessionToken, null);
+                    long projectedBytes = firstPageBytes(sessionToken, FEED_KEYS);
+                    Log.i(TAG, "Page of " + PAGE_SIZE + " posts: " + unprojectedBytes + " bytes unprojected, "
+                            + projectedBytes + " bytes projected, saved " + (unprojectedBytes - projectedBytes) + " bytes");
+                } catch (IOException | JSONException e) {
+                    Log.e(TAG, "Issue with measuring field projection", e);
+                }
+            }
+        });
+    }
+
+    // Size in bytes of the first page as it arrives over the network, selecting only the keys or
+    // every column when they are null
+    private long firstPageBytes(String sessionToken, @Nullable List<String> keys) throws IOException, JSONException {
+        JSONObject where = new JSONObject();
+        if(mUser != null) {
+            where.put(Post.KEY_USER, new JSONObject()
+                    .put("__type", "Pointer")
+                    .put("className", "_User")
+                    .put(Post.KEY_OBJECT_ID, mUser.getObjectId()));
+        }
+        HttpUrl.Builder url = HttpUrl.parse(ParseApplication.SERVER_URL + "classes/Post").newBuilder()
+                .addQueryParameter("where", where.toString())
+                .addQueryParameter("include", Post.KEY_USER)
+                .addQueryParameter("limit", String.valueOf(PAGE_SIZE))
+                .addQueryParameter("order", "-" + Post.KEY_CREATED);
+        if(keys != null) {
+            url.addQueryParameter("keys", TextUtils.join(",", keys));
+        }
+        Request request = new Request.Builder()
+                .url(url.build())
+                .header("X-Parse-Application-Id", ParseApplication.APPLICATION_ID)
+                .header("X-Parse-Client-Key", ParseApplication.CLIENT_KEY)
+                .header("X-Parse-Session-Token", sessionToken)
+                // Asking for gzip explicitly stops OkHttp from decompressing the body, so its size is
+                // the size on the wire
+                .header("Accept-Encoding", "gzip")
+                .build();
+        Response response = ParseApplication.getMeteredClient().newCall(request).execute();
+        try {
+            ResponseBody body = response.body();
+            if(!response.isSuccessful() || body == null) {
+                throw new IOException("Unexpected response " + response.code());
+            }
+            return body.bytes().length;
+        } finally {
+            response.close();
+        }
+    }
+
+    private void loadPage(final FindCallback<Post> callback) {
+        final int generation = mGeneration;
+        mLoading = true;
+        buildQuery().findInBackground(new FindCallback<Post>() {
+            @Override
+            public void done(List<Post> posts, ParseException e) {
+                // A refresh happened while this page was loading, so its results are out of date
+                if(generation != mGeneration) {
+                    return;
+                }
+                mLoading = false;
+                if(e == null) {
+                    onPageLoaded(posts);
+                }
+                callback.done(posts, e);
+            }
+        });
+    }
+
+    private void onPageLoaded(List<Post> posts) {
+        mFirstPageLoaded = true;
+        // A short page means we have reached the oldest post
+        mHasMore = posts.size() == PAGE_SIZE;
+        if(!posts.isEmpty()) {
+            Post last = posts.get(posts.size() - 1);
+            mCursorCreatedAt = last.getCreatedAt();
+            mCursorObjectId = last.getObjectId();
+        }
+    }
+
+    // Builds the query for the page after the cursor. Posts created at the exact same instant
+    // as the cursor are ordered by objectId so that no post is skipped or loaded twice
+    private ParseQuery<Post> buildQuery() {
+        ParseQuery<Post> query;
+        if(mCursorCreatedAt == null) {
+            query = baseQuery();
+        } else {
+            ParseQuery<Post> olderPosts = baseQuery();
+            olderPosts.whereLessThan(Post.KEY_CREATED, mCursorCreatedAt);
+
+            ParseQuery<Post> sameInstantPosts = baseQuery();
+            sameInstantPosts.whereEqualTo(Post.KEY_CREATED, mCursorCreatedAt);
+            sameInstantPosts.whereLessThan(Post.KEY_OBJECT_ID, mCursorObjectId);
+
+            List<ParseQuery<Post>> queries = new ArrayList<>();
+            queries.add(olderPosts);
+            queries.add(sameInstantPosts);
+            query = ParseQuery.or(queries);
+        }
+        query.include(Post.KEY_USER);
+        query.selectKeys(FEED_KEYS);
+        query.setLimit(PAGE_SIZE);
+        query.orderByDescending(Post.KEY_CREATED);
+        query.addDescendingOrder(Post.KEY_OBJECT_ID);
+        return query;
+    }
+
+    // Sub queries of an 'or' query cannot have includes, limits or orders, so this only holds
+    // the constraints shared by every page
+    private ParseQuery<Post> baseQuery() {
+        ParseQuery<Post> query = ParseQuery.getQuery(Post.class);
+        if(mUser != null) {
+            query.whereEqualTo(Post.KEY_USER, mUser);
+        }
+        return query;
+    }
+}
@@ -0,0 +1,395 @@
+package com.example.instagramclone;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.parse.FindCallback;
+import com.parse.GetCallback;
+import com.parse.ParseException;
+import com.parse.ParseQuery;
+import com.parse.ParseUser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *  PostRepository owns the lists of posts shown by the app, e.g. the home
+ *  feed and the posts of a user, and every query that loads them. Screens
+ *  observe a list through {@link LiveData} instead of querying the Parse
+ *  database themselves. Specifically, this class handles the following
+ *  features:
+ *      - Keeping every list in memory under a key, so a screen opening a list
+ *      that was loaded before shows it right away
+ *      - Revalidating a list in the background when it is older than a few
+ *      seconds, and not querying again when it is fresher than that
+ *      - Revalidating a loaded list by querying only the posts created or
+ *      updated since its last sync and merging them in place, and reloading
+ *      it in full when it fell too far behind
+ *      - Showing the first page stored on the device by the {@link PostStore}
+ *      until the first network page arrives, and storing that page
+ *      - Loading the following pages through a {@link PostPager} per list
+ *      - Resolving a single post by its objectId against the lists in memory,
+ *      e.g. for the details screen, so it shows the very post the list shows
+ */
+public class PostRepository {
+
+    public static final String TAG = PostRepository.class.getSimpleName();
+
+    // Lists loaded more recently than this are not queried again when a screen opens them
+    private static final long FRESH_MILLIS = 30 * 1000L;
+    // Lists reloaded in full longer ago than this are reloaded in full again instead of only syncing
+    // their changes, which is what drops posts deleted meanwhile
+    private static final long MAX_SYNC_AGE_MILLIS = 10 * 60 * 1000L;
+
+    /**
+     *  A snapshot of a list of posts, as handed to the screens observing it
+     */
+    public static class Feed {
+        public final List<Post> posts;
+        // Whether the newest page is being loaded, e.g. to revalidate the posts
+        public final boolean refreshing;
+        // Whether the posts are the ones stored on the device, i.e. none came from the network yet
+        public final boolean stored;
+        // The error of the latest load, or null if it succeeded
+        public final ParseException error;
+
+        Feed(List<Post> posts, boolean refreshing, boolean stored, ParseException error) {
+            this.posts = Collections.unmodifiableList(posts);
+            this.refreshing = refreshing;
+            this.stored = stored;
+            this.error = error;
+        }
+    }
+
+    // Everything the repository keeps about one list
+    private static class Entry {
+        final String key;
+        final PostPager pager;
+        final MutableLiveData<Feed> data = new MutableLiveData<>();
+        List<Post> posts = new ArrayList<>();
+        boolean refreshing;
+        boolean stored;
+        ParseException error;
+        // Uptime of the latest successful network load or sync of the newest page, or 0 if there was none
+        long fetchedAt;
+        // Uptime of the latest successful full reload of the newest page, or 0 if there was none
+        long reloadedAt;
+        // Server time of the latest update to the posts, as they were when they were queried. Taken
+        // then because saving a like later updates the very instances in the list
+        Date syncedAt;
+        boolean storeChecked;
+
+        Entry(String key, @Nullable ParseUser user) {
+            this.key = key;
+            this.pager = new PostPager(user);
+        }
+
+        void publish() {
+            data.setValue(new Feed(posts, refreshing, stored, error));
+        }
+    }
+
+    private static PostRepository sInstance;
+
+    private final PostStore mPostStore;
+    private final Map<String, Entry> mEntries = new HashMap<>();
+
+    private PostRepository(Context context) {
+        mPostStore = PostStore.get(context);
+    }
+
+    public static PostRepository get(Context context) {
+        if(sInstance == null) {
+            sInstance = new PostRepository(context);
+        }
+        return sInstance;
+    }
+
+    // Key of the list with the newest posts of every user
+    public static String homeFeed() {
+        return PostStore.homeFeed();
+    }
+
+    // Key of the list with the newest posts of a single user
+    public static String userFeed(ParseUser user) {
+        return PostStore.userFeed(user);
+    }
+
+    // The list with the key, loading it if it is not in memory or revalidating it if it is stale.
+    // The user limits the list to their posts, or is null for every post
+    public LiveData<Feed> observe(String key, @Nullable ParseUser user) {
+        Entry entry = entryOf(key, user);
+        revalidate(entry, false);
+        return entry.data;
+    }
+
+    // Starts reading the posts of the list stored on the device, before any screen observes it, e.g.
+    // while the activity showing it starts. They are then often there by the time the screen first
+    // observes the list, so its first frame already shows them
+    public void preloadStored(String key, @Nullable ParseUser user) {
+        Entry entry = entryOf(key, user);
+        if(!entry.storeChecked) {
+            entry.storeChecked = true;
+            showStoredPosts(entry);
+        }
+    }
+
+    // Starts querying the newest page of the list before any screen observes it, e.g. right after
+    // the user logs in while the activity showing it starts. A screen observing the list meanwhile
+    // gets the page from this query instead of sending its own
+    public void prefetch(String key, @Nullable ParseUser user) {
+        revalidate(entryOf(key, user), false);
+    }
+
+    // Loads the newest page of the list again, e.g. when the user pulls to refresh
+    public void refresh(String key) {
+        Entry entry = mEntries.get(key);
+        if(entry != null) {
+            revalidate(entry, true);
+        }
+    }
+
+    // Loads the page following the last loaded one and appends it to the list
+    public void loadMore(String key) {
+        final Entry entry = mEntries.get(key);
+        // Nothing to continue from while the list only holds the stored page
+        if(entry == null || entry.stored) {
+            return;
+        }
+        entry.pager.loadNextPage(new FindCallback<Post>() {
+            @Override
+            public void done(List<Post> posts, ParseException e) {
+                if(!isCurrent(entry)) {
+                    return;
+                }
+                if(e != null) {
+                    Log.e(TAG, "Issue with getting next page of " + entry.key, e);
+                    return;
+                }
+                List<Post> allPosts = new ArrayList<>(entry.posts);
+                allPosts.addAll(posts);
+                entry.posts = allPosts;
+                entry.publish();
+            }
+        });
+    }
+
+    // The post with the objectId as the lists in memory currently hold it, or null if none of them does
+    @Nullable
+    public Post getCachedPost(String objectId) {
+        for(Entry entry : mEntries.values()) {
+            for(Post post : entry.posts) {
+                if(objectId.equals(post.getObjectId())) {
+                    return post;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Hands the post with the objectId to the callback, right away if a list in memory holds it.
+    // Otherwise, e.g. when the app was restarted on the details screen, it is queried on its own
+    public void findPost(final String objectId, final GetCallback<Post> callback) {
+        Post post = getCachedPost(objectId);
+        if(post != null) {
+            callback.done(post, null);
+            return;
+        }
+        ParseQuery<Post> query = ParseQuery.getQuery(Post.class);
+        query.include(Post.KEY_USER);
+        query.getInBackground(objectId, new GetCallback<Post>() {
+            @Override
+            public void done(Post post, ParseException e) {
+                if(e != null) {
+                    Log.e(TAG, "Issue with getting post " + objectId, e);
+                }
+                callback.done(post, e);
+            }
+        });
+    }
+
+    // Forgets every list, e.g. when the user logs out
+    public void clear() {
+        mEntries.clear();
+    }
+
+    // Debug aid, see PostPager.logProjectionSavings
+    public void logProjectionSavings() {
+        new PostPager(null).logProjectionSavings();
+    }
+
+    private Entry entryOf(String key, @Nullable ParseUser user) {
+        Entry entry = mEntries.get(key);
+        if(entry == null) {
+            entry = new Entry(key, user);
+            mEntries.put(key, entry);
+        }
+        return entry;
+    }
+
+    // Whether the entry is still the list of its key, i.e. the lists were not cleared since
+    private boolean isCurrent(Entry entry) {
+        return mEntries.get(entry.key) == entry;
+    }
+
+    // Queries the newest page unless it is already being queried or, without force, is still fresh
+    private void revalidate(final Entry entry, boolean force) {
+        if(entry.refreshing) {
+            return;
+        }
+        boolean fresh = entry.fetchedAt != 0 && SystemClock.uptimeMillis() - entry.fetchedAt < FRESH_MILLIS;
+        if(fresh && !force) {
+            return;
+        }
+        if(!entry.storeChecked) {
+            entry.storeChecked = true;
+            showStoredPosts(entry);
+        }
+        entry.refreshing = true;
+        entry.publish();
+        if(canSyncChanges(entry)) {
+            syncChanges(entry);
+        } else {
+            reload(entry);
+        }
+    }
+
+    // Whether the list holds posts from the network recent enough to only sync what changed since
+    private boolean canSyncChanges(Entry entry) {
+        return !entry.stored && !entry.posts.isEmpty() && entry.reloadedAt != 0 && entry.syncedAt != null
+                && SystemClock.uptimeMillis() - entry.reloadedAt < MAX_SYNC_AGE_MILLIS;
+    }
+
+    // Queries the posts created or updated since the list was last synced and merges them into it.
+    // Most refreshes change no post or a single one, so they download about that much
+    private void syncChanges(final Entry entry) {
+        Post newest = entry.posts.get(0);
+        Post oldest = entry.posts.get(entry.posts.size() - 1);
+        entry.pager.loadChanges(newest.getCreatedAt(), oldest.getCreatedAt(), entry.syncedAt, new FindCallback<Post>() {
+            @Override
+            public void done(List<Post> posts, ParseException e) {
+                // The lists were cleared meanwhile, e.g. because the user logged out
+                if(!isCurrent(entry)) {
+                    return;
+                }
+                if(e != null) {
+                    // Offline, the posts already in the list stay there
+                    Log.e(TAG, "Issue with syncing posts of " + entry.key, e);
+                    entry.refreshing = false;
+                    entry.error = e;
+                    entry.publish();
+                    return;
+                }
+                if(posts.size() >= PostPager.MAX_CHANGES) {
+                    // There may be more changes than a sync downloads, so reload the newest page instead
+                    Log.i(TAG, "Too many changes to sync " + entry.key + ", reloading it");
+                    reload(entry);
+                    return;
+                }
+                entry.refreshing = false;
+                entry.error = null;
+                entry.fetchedAt = SystemClock.uptimeMillis();
+                if(posts.isEmpty()) {
+                    entry.publish();
+                    return;
+                }
+                entry.posts = merge(entry.posts, posts);
+                Date latestChange = latestUpdate(posts);
+                if(latestChange != null && latestChange.after(entry.syncedAt)) {
+                    entry.syncedAt = latestChange;
+                }
+                entry.publish();
+                mPostStore.save(entry.key, entry.posts);
+            }
+        });
+    }
+
+    // Loads the newest page of the list again from scratch, replacing every post in it
+    private void reload(final Entry entry) {
+        entry.pager.loadFirstPage(new FindCallback<Post>() {
+            @Override
+            public void done(List<Post> posts, ParseException e) {
+                if(!isCurrent(entry)) {
+                    return;
+                }
+                entry.refreshing = false;
+                entry.error = e;
+                if(e != null) {
+                    // Offline, the posts already in the list stay there
+                    Log.e(TAG, "Issue with getting posts of " + entry.key, e);
+                    entry.publish();
+                    return;
+                }
+                entry.posts = new ArrayList<>(posts);
+                entry.stored = false;
+                entry.fetchedAt = SystemClock.uptimeMillis();
+                entry.reloadedAt = entry.fetchedAt;
+                entry.syncedAt = latestUpdate(posts);
+                entry.publish();
+                // Keep the new first page on the device for the next time this list is opened
+                mPostStore.save(entry.key, posts);
+            }
+        });
+    }
+
+    // The posts with the changed ones replacing their old versions in place, and the new ones, i.e.
+    // the ones created after the newest of the posts, on top. Both lists are ordered newest first
+    private static List<Post> merge(List<Post> posts, List<Post> changes) {
+        Date newestCreatedAt = posts.get(0).getCreatedAt();
+        List<Post> merged = new ArrayList<>();
+        Map<String, Post> changedPosts = new HashMap<>();
+        for(Post change : changes) {
+            if(change.getCreatedAt().after(newestCreatedAt)) {
+                merged.add(change);
+            } else {
+                changedPosts.put(change.getObjectId(), change);
+            }
+        }
+        for(Post post : posts) {
+            Post changedPost = changedPosts.get(post.getObjectId());
+            merged.add((changedPost != null) ? changedPost : post);
+        }
+        return merged;
+    }
+
+    // The server time of the latest update to any of the posts, or null if there are none. Every
+    // change made after the posts were queried is newer than that, whatever the device clock says
+    private static Date latestUpdate(List<Post> posts) {
+        Date latest = null;
+        for(Post post : posts) {
+            Date updatedAt = post.getUpdatedAt();
+            if(updatedAt != null && (latest == null || updatedAt.after(latest))) {
+                latest = updatedAt;
+            }
+        }
+        return latest;
+    }
+
+    // Shows the first page stored on the device, unless the network was faster
+    private void showStoredPosts(final Entry entry) {
+        mPostStore.load(entry.key, new FindCallback<Post>() {
+            @Override
+            public void done(List<Post> posts, ParseException e) {
+                if(e != null) {
+                    Log.e(TAG, "Issue with getting stored posts of " + entry.key, e);
+                    return;
+                }
+                if(entry.fetchedAt != 0 || posts.isEmpty() || !isCurrent(entry)) {
+                    return;
+                }
+                entry.posts = new ArrayList<>(posts);
+                entry.stored = true;
+                entry.publish();
+            }
+        });
+    }
+}
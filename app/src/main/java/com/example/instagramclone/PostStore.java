@@ -0,0 +1,168 @@
+package com.example.instagramclone;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.parse.DeleteCallback;
+import com.parse.FindCallback;
+import com.parse.ParseException;
+import com.parse.ParseObject;
+import com.parse.ParseQuery;
+import com.parse.ParseUser;
+import com.parse.SaveCallback;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *  PostStore keeps the first page of each list of posts, e.g. the home feed
+ *  and the current user's profile, on the device using the Parse local
+ *  datastore. Lists can then be shown the moment their screen opens, even
+ *  offline, and are reconciled with the Parse database once the network
+ *  query comes back. Specifically, this class handles the following features:
+ *      - Pinning the first page of a list, together with the users of its
+ *      posts, under a name for that list
+ *      - Loading a pinned page back, newest post first
+ *      - Evicting pages older than a maximum age, and the least recently
+ *      stored lists beyond a maximum number of lists, so the store cannot
+ *      grow without bound
+ *      - Removing every stored page when the user logs out
+ */
+public class PostStore {
+
+    public static final String TAG = PostStore.class.getSimpleName();
+
+    // Pages older than this are not worth showing, even offline
+    private static final long MAX_AGE_MILLIS = 3 * 24 * 60 * 60 * 1000L;
+    // At most this many lists are stored, each holding at most a page of posts
+    private static final int MAX_STORED_LISTS = 5;
+
+    private static final String PREFERENCES_NAME = "post_store";
+    private static final String KEY_STORED_LISTS = "stored_lists";
+    private static final String KEY_STORED_AT_PREFIX = "stored_at_";
+    private static final String LIST_SEPARATOR = ",";
+
+    private static final String HOME_FEED = "feed_home";
+    private static final String USER_FEED_PREFIX = "feed_user_";
+
+    private static PostStore sInstance;
+
+    private final SharedPreferences mPreferences;
+
+    private PostStore(Context context) {
+        mPreferences = context.getApplicationContext().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static PostStore get(Context context) {
+        if(sInstance == null) {
+            sInstance = new PostStore(context);
+        }
+        return sInstance;
+    }
+
+    // Name of the stored list with the newest posts of every user
+    public static String homeFeed() {
+        return HOME_FEED;
+    }
+
+    // Name of the stored list with the newest posts of a single user
+    public static String userFeed(ParseUser user) {
+        return USER_FEED_PREFIX + user.getObjectId();
+    }
+
+    // Loads the stored page of the list. The callback gets an empty list if nothing is stored or
+    // the stored page is too old
+    public void load(final String listName, final FindCallback<Post> callback) {
+        long storedAt = mPreferences.getLong(KEY_STORED_AT_PREFIX + listName, 0);
+        if(System.currentTimeMillis() - storedAt > MAX_AGE_MILLIS) {
+            if(storedAt != 0) {
+                remove(listName);
+            }
+            callback.done(new ArrayList<Post>(), null);
+            return;
+        }
+        ParseQuery<Post> query = ParseQuery.getQuery(Post.class);
+        query.fromPin(listName);
+        query.include(Post.KEY_USER);
+        query.setLimit(PostPager.PAGE_SIZE);
+        query.orderByDescending(Post.KEY_CREATED);
+        query.addDescendingOrder(Post.KEY_OBJECT_ID);
+        query.findInBackground(callback);
+    }
+
+    // Replaces the stored page of the list with the given posts
+    public void save(final String listName, final List<Post> posts) {
+        final List<Post> page = posts.subList(0, Math.min(posts.size(), PostPager.PAGE_SIZE));
+        ParseObject.unpinAllInBackground(listName, new DeleteCallback() {
+            @Override
+            public void done(ParseException e) {
+                if(e != null) {
+                    Log.e(TAG, "Issue with removing stored posts of " + listName, e);
+                    return;
+                }
+                ParseObject.pinAllInBackground(listName, new ArrayList<>(page), new SaveCallback() {
+                    @Override
+                    public void done(ParseException e) {
+                        if(e != null) {
+                            Log.e(TAG, "Issue with storing posts of " + listName, e);
+                        }
+                    }
+                });
+            }
+        });
+        markStored(listName);
+    }
+
+    // Removes every stored list, e.g. when the user logs out
+    public void clear() {
+        for(String listName : storedLists()) {
+            ParseObject.unpinAllInBackground(listName);
+        }
+        mPreferences.edit().clear().apply();
+    }
+
+    // Moves the list to the front of the stored lists and evicts the least recently stored ones
+    private void markStored(String listName) {
+        List<String> lists = storedLists();
+        lists.remove(listName);
+        lists.add(0, listName);
+        while(lists.size() > MAX_STORED_LISTS) {
+            remove(lists.remove(lists.size() - 1));
+        }
+        mPreferences.edit()
+                .putLong(KEY_STORED_AT_PREFIX + listName, System.currentTimeMillis())
+                .putString(KEY_STORED_LISTS, join(lists))
+                .apply();
+    }
+
+    private void remove(String listName) {
+        ParseObject.unpinAllInBackground(listName);
+        List<String> lists = storedLists();
+        lists.remove(listName);
+        mPreferences.edit()
+                .remove(KEY_STORED_AT_PREFIX + listName)
+                .putString(KEY_STORED_LISTS, join(lists))
+                .apply();
+    }
+
+    private List<String> storedLists() {
+        String lists = mPreferences.getString(KEY_STORED_LISTS, "");
+        if(lists.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(Arrays.asList(lists.split(LIST_SEPARATOR)));
+    }
+
+    private static String join(List<String> lists) {
+        StringBuilder joined = new StringBuilder();
+        for(String list : lists) {
+            if(joined.length() > 0) {
+                joined.append(LIST_SEPARATOR);
+            }
+            joined.append(list);
+        }
+        return joined.toString();
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.instagramclone;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.parse.ParseException;
+import com.parse.ParseFile;
+import com.parse.ParseQuery;
+import com.parse.ParseUser;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *  PostUploadWorker is a subclass of {@link Worker}. WorkManager runs it for
+ *  every post in the {@link PostOutbox} once the device is online, also after
+ *  the app was killed. Specifically, this class handles the following
+ *  features:
+ *      - Uploading the image of the pending post and then saving the post
+ *      itself to the Parse database, skipping the image if the compose
+ *      screen already uploaded it
+ *      - Looking for the post an earlier attempt saved before saving it, so
+ *      a save whose response was lost does not create a duplicate post
+ *      - Asking WorkManager to retry with backoff when the upload fails
+ *      because of the network or the server
+ *      - Giving up after a number of attempts, or right away when the post
+ *      can never be saved, and reporting the outcome to the outbox
+ */
+public class PostUploadWorker extends Worker {
+
+    public static final String TAG = PostUploadWorker.class.getSimpleName();
+    public static final String KEY_ENTRY_ID = "entry_id";
+
+    // After this many attempts the post is marked as failed until the user retries it
+    private static final int MAX_ATTEMPTS = 6;
+
+    public PostUploadWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        PostOutbox outbox = PostOutbox.get(getApplicationContext());
+        String id = getInputData().getString(KEY_ENTRY_ID);
+        try {
+            // The outbox loads its posts from the device in the background when the app starts
+            outbox.awaitLoaded();
+        } catch (InterruptedException e) {
+            return Result.retry();
+        }
+        PostOutbox.Entry entry = (id == null) ? null : outbox.getEntry(id);
+        // The post was uploaded or removed meanwhile, e.g. because the user logged out
+        if(entry == null) {
+            return Result.success();
+        }
+        ParseUser currentUser = ParseUser.getCurrentUser();
+        if(currentUser == null || !entry.userId.equals(currentUser.getObjectId()) || !entry.imageFile.exists()) {
+            Log.e(TAG, "Discarding pending post " + id + " that can no longer be uploaded");
+            outbox.discard(id);
+            return Result.failure();
+        }
+
+        try {
+            // An earlier attempt may have saved the post and only lost the response
+            if(entry.saveStarted) {
+                Post savedPost = findSavedPost(id, currentUser);
+                if(savedPost != null) {
+                    Log.i(TAG, "Pending post " + id + " was already saved as " + savedPost.getObjectId());
+                    outbox.onUploaded(id, savedPost.getObjectId());
+                    return Result.success();
+                }
+            }
+
+            // The image was usually uploaded while the caption was typed, or by an earlier attempt
+            ParseFile image = outbox.awaitUploadedImage(id);
+            if(image == null) {
+                // Saving the post would upload its image too, but saving it first keeps the post save small
+                image = new ParseFile(entry.imageFile);
+                image.save();
+                outbox.onImageUploaded(id, image);
+            }
+
+            Post post = new Post();
+            post.setDescription(entry.description);
+            post.setUser(currentUser);
+            post.setImage(image);
+            post.setOutboxId(id);
+            post.initLikeCount();
+            outbox.onSaveStarted(id);
+            post.save();
+
+            Log.i(TAG, "Uploaded pending post " + id + " as " + post.getObjectId());
+            outbox.onUploaded(id, post.getObjectId());
+            return Result.success();
+        } catch (ParseException e) {
+            Log.e(TAG, "Issue with uploading pending post " + id, e);
+            if(e.getCode() == ParseException.INVALID_SESSION_TOKEN
+                    || getRunAttemptCount() + 1 >= MAX_ATTEMPTS) {
+                outbox.onUploadFailed(id);
+                return Result.failure();
+            }
+            return Result.retry();
+        } catch (InterruptedException e) {
+            // Interrupted while waiting for the upload the compose screen started
+            return Result.retry();
+        }
+    }
+
+    // The post saved for the outbox entry, or null if there is none
+    private static Post findSavedPost(String id, ParseUser user) throws ParseException {
+        ParseQuery<Post> query = ParseQuery.getQuery(Post.class);
+        query.whereEqualTo(Post.KEY_OUTBOX_ID, id);
+        query.whereEqualTo(Post.KEY_USER, user);
+        query.selectKeys(Collections.singletonList(Post.KEY_OBJECT_ID));
+        query.setLimit(1);
+        List<Post> posts = query.find();
+        return posts.isEmpty() ? null : posts.get(0);
+    }
+}
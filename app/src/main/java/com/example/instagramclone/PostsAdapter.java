@@ -1,9 +1,8 @@
 package com.example.instagramclone;
 
 import android.content.Context;
-import android.os.Bundle;
-import android.text.Html;
-import android.text.format.DateUtils;
+import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
@@ -11,97 +10,381 @@ import android.view.ViewGroup;
 import android.widget.ImageButton;
 import android.widget.ImageView;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
+import androidx.core.view.ViewCompat;
 import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
+import com.bumptech.glide.util.ViewPreloadSizeProvider;
+import com.example.instagramclone.feed.LikesLabel;
 import com.example.instagramclone.fragments.DetailsFragment;
+import com.example.instagramclone.metrics.FeedMetrics;
+import com.example.instagramclone.metrics.LatencyHistogram;
 import com.parse.ParseFile;
-import com.parse.ParseUser;
 
-import org.parceler.Parcels;
-
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  *  PostsAdapter is a subclass of {@link RecyclerView.Adapter<PostsAdapter.ViewHolder>}.
  *  It provides the functionality for how users view and interact with the individual
- *  items in the Recycler View that contains the retrieved, most-recent 20 "Instagram"
+ *  items in the Recycler View that contains the retrieved, most-recent "Instagram"
  *  posts from the Parse database. Specifically, through its definition of the View Holder
  *  class, it handles the following features:
  *      - Allowing users to double-tap on individual post's image to 'like' the post
  *      - Allowing users to tap on the heart button to 'like' a post
- *      - Allowing users to scroll through the most-recent 20 posts
- *      - Displaying the most-recent 20 posts by querying the Parse database for the
+ *      - Allowing users to scroll through the loaded pages of posts
+ *      - Displaying the most-recent posts by querying the Parse database for the
  *      associated details of those posts and binding the information to the various
  *      view components of each item view within the Recycler View
  *      - Allowing users to tap on a post to go to a screen with the post's details
  *      - Displaying the each posts' caption, creator profile pic, number of likes,
  *      creator username, and timestamp in each item view of the Recycler View
+ *      - Displaying the posts still waiting in the {@link PostOutbox} above the
+ *      others, with their upload state, until they are saved to the database
+ *      - Timing how long creating and binding rows and loading their images
+ *      take, in the {@link FeedMetrics}
  */
-public class PostsAdapter extends RecyclerView.Adapter<PostsAdapter.ViewHolder> {
+public class PostsAdapter extends RecyclerView.Adapter<PostsAdapter.ViewHolder>
+        implements LikedPostsIndex.Listener, LikeWriteCoalescer.Listener,
+        FeedImagePreloader.PreloadModelProvider {
+
+    // Payload for partial rebinds that only touch the like button and like count of a row
+    public static final String PAYLOAD_LIKES = "likes";
 
     private Context mContext;
-    private List<Post> mPostsList;
+    // Computes the difference between the old and new list of posts on a background thread and
+    // dispatches only the item-level insert/move/change events to the adapter
+    private final AsyncListDiffer<Post> mDiffer;
+    // The posts from the database most recently handed to the differ, which may not be displayed
+    // yet if a diff is still being computed. New pages are appended to this list so that none are lost
+    private List<Post> mLatestPostsList = new ArrayList<>();
+    // Posts still waiting in the outbox to be uploaded, shown above the posts from the database
+    private List<Post> mPendingPosts = new ArrayList<>();
+    // The updatedAt each row was last bound with, by objectId. Written on the main thread and read
+    // by the differ on its background thread. Posts that left the list are dropped once the differ
+    // committed it
+    private final Map<String, Long> mBoundVersions = new ConcurrentHashMap<>();
+    // Answers whether the current user liked a post without looking at the post's likes
+    private final LikedPostsIndex mLikedPostsIndex = LikedPostsIndex.get();
+    // Shows likes right away and writes them to the database in batches
+    private final LikeWriteCoalescer mLikeWriter = LikeWriteCoalescer.get();
+    private final RelativeTimeFormatter mTimeFormatter = RelativeTimeFormatter.get();
+    private final LatencyHistogram mCreateLatency = FeedMetrics.get().histogram(FeedMetrics.CREATE_VIEW_HOLDER);
+    private final LatencyHistogram mBindLatency = FeedMetrics.get().histogram(FeedMetrics.BIND_VIEW_HOLDER);
+    private final LatencyHistogram mImageLoadLatency = FeedMetrics.get().histogram(FeedMetrics.IMAGE_LOAD);
+    private final CaptionCache mCaptionCache = CaptionCache.get();
+    private final UserCache mUserCache = UserCache.get();
+    // Measures the post image view so images can be preloaded at exactly the size it shows them
+    private final ViewPreloadSizeProvider<Post> mPostImageSizeProvider = new ViewPreloadSizeProvider<>();
+    private final int mProfileImageSize;
+
+    // The recycler this adapter is attached to, used to refresh the timestamps of visible rows
+    private RecyclerView mRecyclerView;
+    // Uptime at which the timestamps of the visible rows are refreshed next, or 0 if not scheduled
+    private long mNextTimestampTick;
+    private final Runnable mTimestampTicker = new Runnable() {
+        @Override
+        public void run() {
+            mNextTimestampTick = 0;
+            refreshVisibleTimestamps();
+        }
+    };
+    // Timestamps only need refreshing while the recycler is on screen
+    private final View.OnAttachStateChangeListener mAttachStateListener = new View.OnAttachStateChangeListener() {
+        @Override
+        public void onViewAttachedToWindow(View view) {
+            refreshVisibleTimestamps();
+        }
 
-    public PostsAdapter(Context mContext, List<Post> mPosts) {
+        @Override
+        public void onViewDetachedFromWindow(View view) {
+            view.removeCallbacks(mTimestampTicker);
+            mNextTimestampTick = 0;
+        }
+    };
+
+    public PostsAdapter(Context mContext) {
         this.mContext = mContext;
-        this.mPostsList = mPosts;
+        this.mDiffer = new AsyncListDiffer<>(this, mDiffCallback);
+        this.mProfileImageSize = mContext.getResources().getDimensionPixelSize(R.dimen.post_profile_image_size);
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        mLikedPostsIndex.addListener(this);
+        mLikeWriter.addListener(this);
+        mRecyclerView = recyclerView;
+        mRecyclerView.addOnAttachStateChangeListener(mAttachStateListener);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        mLikedPostsIndex.removeListener(this);
+        mLikeWriter.removeListener(this);
+        mRecyclerView.removeOnAttachStateChangeListener(mAttachStateListener);
+        mRecyclerView.removeCallbacks(mTimestampTicker);
+        mNextTimestampTick = 0;
+        mRecyclerView = null;
     }
 
     @NonNull
     @Override
     public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        long start = System.nanoTime();
         View view = LayoutInflater.from(mContext).inflate(R.layout.item_post, parent, false);
-        return new ViewHolder(view);
+        ViewHolder holder = new ViewHolder(view);
+        // Captions of later pages can now have their text layout precomputed for this TextView
+        mCaptionCache.setTextMetricsParams(holder.mDescriptionTextView);
+        mPostImageSizeProvider.setView(holder.mPostPictureImageView);
+        mCreateLatency.record(System.nanoTime() - start);
+        return holder;
     }
 
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        Post post = mPostsList.get(position);
+        long start = System.nanoTime();
+        Post post = getItem(position);
         holder.bind(post);
+        mBindLatency.record(System.nanoTime() - start);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        // Without a payload the whole row has to be bound again
+        if(payloads.isEmpty() || !onlyLikesPayloads(payloads)) {
+            super.onBindViewHolder(holder, position, payloads);
+            return;
+        }
+        Post post = getItem(position);
+        // Pending posts cannot be liked, so there is nothing to refresh
+        if(post.isPending()) {
+            return;
+        }
+        holder.bindLikes(post);
+    }
+
+    // The layout is the view type, so lists sharing a pool of recycled views never mix up rows
+    @Override
+    public int getItemViewType(int position) {
+        return R.layout.item_post;
     }
 
     @Override
     public int getItemCount() {
-        return mPostsList.size();
+        return mDiffer.getCurrentList().size();
+    }
+
+    public Post getItem(int position) {
+        return mDiffer.getCurrentList().get(position);
     }
 
-    // Clean all elements of the recycler
-    public void clear() {
-        mPostsList.clear();
-        notifyDataSetChanged();
+    // Replace the items of the recycler, e.g. after a refresh. Only the posts that were added,
+    // moved or changed compared to the current items get rebound
+    public void setPosts(List<Post> posts) {
+        // Build the captions of new posts in the background before their rows are bound
+        mCaptionCache.prefetch(posts);
+        mLatestPostsList = new ArrayList<>(posts);
+        submitPosts();
     }
 
-    // Add a list of items -- change to type used
+    // Replace the pending posts shown at the top of the recycler
+    public void setPendingPosts(List<Post> pendingPosts) {
+        mPendingPosts = new ArrayList<>(pendingPosts);
+        submitPosts();
+    }
+
+    // Append a list of items to the end of the recycler, e.g. the next page of posts
     public void addAll(List<Post> posts) {
-        mPostsList.addAll(posts);
-        notifyDataSetChanged();
+        List<Post> newPostsList = new ArrayList<>(mLatestPostsList);
+        newPostsList.addAll(posts);
+        setPosts(newPostsList);
+    }
+
+    private void submitPosts() {
+        List<Post> posts = new ArrayList<>(mPendingPosts);
+        posts.addAll(mLatestPostsList);
+        mDiffer.submitList(posts, mForgetRemovedPosts);
+    }
+
+    // Drops the bound versions of posts that are no longer in the list the differ committed
+    private final Runnable mForgetRemovedPosts = new Runnable() {
+        @Override
+        public void run() {
+            Set<String> postIds = new HashSet<>();
+            for(Post post : mDiffer.getCurrentList()) {
+                if(post.getObjectId() != null) {
+                    postIds.add(post.getObjectId());
+                }
+            }
+            mBoundVersions.keySet().retainAll(postIds);
+        }
+    };
+
+    // Refresh the like button of the post whose like state changed, if it is in the recycler
+    @Override
+    public void onLikedStateChanged(String postId) {
+        List<Post> posts = mDiffer.getCurrentList();
+        for(int i = 0; i < posts.size(); i++) {
+            if(postId.equals(posts.get(i).getObjectId())) {
+                notifyItemChanged(i, PAYLOAD_LIKES);
+                return;
+            }
+        }
+    }
+
+    // Refresh the like count of the post once its likes were saved or rolled back
+    @Override
+    public void onLikeCountChanged(String postId) {
+        onLikedStateChanged(postId);
+    }
+
+    // Refresh every like button, e.g. once the liked posts of the user finished loading
+    @Override
+    public void onIndexChanged() {
+        notifyItemRangeChanged(0, getItemCount(), PAYLOAD_LIKES);
+    }
+
+    // Requests for the post and profile images of the post at the position, at the sizes its row
+    // will request them. The post image is left out until a row has been laid out and measured
+    @Override
+    public List<RequestBuilder<Drawable>> getPreloadRequests(RequestManager glide, int position) {
+        List<RequestBuilder<Drawable>> requests = new ArrayList<>();
+        if(position >= getItemCount()) {
+            return requests;
+        }
+        Post post = getItem(position);
+        ParseFile image = post.getImage();
+        int[] imageSize = mPostImageSizeProvider.getPreloadSize(post, position, 0);
+        if(post.isPending() && imageSize != null) {
+            requests.add(PostImageRequests.postImage(glide, post.getLocalImageFile()).override(imageSize[0], imageSize[1]));
+        } else if(image != null && imageSize != null) {
+            requests.add(PostImageRequests.postImage(glide, image.getUrl()).override(imageSize[0], imageSize[1]));
+        }
+        String profileImageUrl = mUserCache.resolve(post.getUser()).profileImageUrl;
+        if(profileImageUrl != null) {
+            requests.add(PostImageRequests.profileImage(glide, profileImageUrl)
+                    .override(mProfileImageSize, mProfileImageSize));
+        }
+        return requests;
     }
 
-    // getRelativeTimeAgo("Thu Jul 09 17:20:55 EDT 2020")
-    public String getRelativeTimeAgo(String rawJsonDate) {
-        String instaFormat = "EEE MMM dd HH:mm:ss ZZZ yyyy";
-        SimpleDateFormat sf = new SimpleDateFormat(instaFormat, Locale.ENGLISH);
-        sf.setLenient(true);
-
-        String relativeDate = "";
-        try {
-            long dateMillis = sf.parse(rawJsonDate).getTime();
-            relativeDate = DateUtils.getRelativeTimeSpanString(dateMillis,
-                    System.currentTimeMillis(), DateUtils.SECOND_IN_MILLIS).toString();
-        } catch (ParseException e) {
-            e.printStackTrace();
+    // Sets the timestamp of every visible row to its current value, without rebinding the rows, and
+    // schedules the next refresh for when the first of those timestamps changes
+    private void refreshVisibleTimestamps() {
+        if(mRecyclerView == null || !ViewCompat.isAttachedToWindow(mRecyclerView)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long nextChange = Long.MAX_VALUE;
+        for(int i = 0; i < mRecyclerView.getChildCount(); i++) {
+            ViewHolder holder = (ViewHolder) mRecyclerView.getChildViewHolder(mRecyclerView.getChildAt(i));
+            int position = holder.getAdapterPosition();
+            if(position == RecyclerView.NO_POSITION || getItem(position).isPending()) {
+                continue;
+            }
+            long createdAt = getItem(position).getCreatedAt().getTime();
+            holder.mTimestampTextView.setText(mTimeFormatter.format(createdAt, now));
+            nextChange = Math.min(nextChange, mTimeFormatter.millisUntilNextChange(createdAt, now));
+        }
+        scheduleTimestampTick(nextChange);
+    }
+
+    // Makes sure the visible timestamps are refreshed within the given delay
+    private void scheduleTimestampTick(long delayMillis) {
+        if(mRecyclerView == null || delayMillis == Long.MAX_VALUE) {
+            return;
+        }
+        long tickAt = SystemClock.uptimeMillis() + delayMillis;
+        // A refresh that happens before this one would is already scheduled
+        if(mNextTimestampTick != 0 && mNextTimestampTick <= tickAt) {
+            return;
+        }
+        mRecyclerView.removeCallbacks(mTimestampTicker);
+        mNextTimestampTick = tickAt;
+        mRecyclerView.postDelayed(mTimestampTicker, delayMillis);
+    }
+
+    private static boolean onlyLikesPayloads(List<Object> payloads) {
+        for(Object payload : payloads) {
+            if(!PAYLOAD_LIKES.equals(payload)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Posts are the same item when they have the same objectId, or the same outbox id while they
+    // are pending, and have the same contents when they have not been updated since. When only the
+    // likes of a post changed, the row is partially rebound with the likes payload so its images
+    // are not loaded again.
+    // With the local datastore, Parse hands out a single instance per objectId, so a refreshed post
+    // is often the very instance already in the list. Such a post is compared against the version
+    // its row was last bound with instead
+    private final DiffUtil.ItemCallback<Post> mDiffCallback = new DiffUtil.ItemCallback<Post>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Post oldPost, @NonNull Post newPost) {
+            if(oldPost.isPending() || newPost.isPending()) {
+                return equalOrBothNull(oldPost.getOutboxId(), newPost.getOutboxId());
+            }
+            return equalOrBothNull(oldPost.getObjectId(), newPost.getObjectId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Post oldPost, @NonNull Post newPost) {
+            // The only thing that changes about a pending post is whether its upload gave up
+            if(oldPost.isPending()) {
+                return oldPost.isUploadFailed() == newPost.isUploadFailed();
+            }
+            if(oldPost == newPost) {
+                Long boundVersion = (newPost.getObjectId() == null) ? null : mBoundVersions.get(newPost.getObjectId());
+                return boundVersion == null || boundVersion == versionOf(newPost);
+            }
+            return equalOrBothNull(oldPost.getUpdatedAt(), newPost.getUpdatedAt());
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull Post oldPost, @NonNull Post newPost) {
+            // The old contents of a shared instance are gone, so its whole row is bound again
+            if(oldPost == newPost || oldPost.isPending()) {
+                return null;
+            }
+            ParseFile oldImage = oldPost.getImage();
+            ParseFile newImage = newPost.getImage();
+            boolean sameImage = equalOrBothNull(oldImage == null ? null : oldImage.getName(),
+                    newImage == null ? null : newImage.getName());
+            if(sameImage && equalOrBothNull(oldPost.getDescription(), newPost.getDescription())) {
+                return PAYLOAD_LIKES;
+            }
+            return null;
         }
+    };
+
+    private static long versionOf(Post post) {
+        return (post.getUpdatedAt() == null) ? 0 : post.getUpdatedAt().getTime();
+    }
 
-        return relativeDate;
+    private static boolean equalOrBothNull(Object a, Object b) {
+        return (a == null) ? b == null : a.equals(b);
     }
 
     class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
@@ -113,6 +396,20 @@ public class PostsAdapter extends RecyclerView.Adapter<PostsAdapter.ViewHolder>
         private TextView mTimestampTextView;
         private ImageButton mLikeImageButton;
         private TextView mLikesCountTextView;
+        // When the post image shown by this row was requested, to time how long it takes to load
+        private long mImageRequestedAt;
+        private final RequestListener<Drawable> mImageLoadListener = new RequestListener<Drawable>() {
+            @Override
+            public boolean onLoadFailed(@Nullable GlideException e, Object model, Target<Drawable> target, boolean isFirstResource) {
+                return false;
+            }
+
+            @Override
+            public boolean onResourceReady(Drawable resource, Object model, Target<Drawable> target, DataSource dataSource, boolean isFirstResource) {
+                mImageLoadLatency.record(System.nanoTime() - mImageRequestedAt);
+                return false;
+            }
+        };
 
         public ViewHolder(@NonNull View itemView) {
             super(itemView);
@@ -130,74 +427,87 @@ public class PostsAdapter extends RecyclerView.Adapter<PostsAdapter.ViewHolder>
             mPostPictureImageView.setOnTouchListener(new OnDoubleTapListener(mContext) {
                 @Override
                 public void onDoubleTap(MotionEvent e) {
-                    final int position = getAdapterPosition();
-                    // Getting the current post from the List of posts using the adapter position
-                    Post post = mPostsList.get(position);
-                    // Retrieving the array of users that have liked the current post
-                    List<ParseUser> likes = (ArrayList<ParseUser>) post.get("likes");
-
-                    List<ParseUser> users = new ArrayList<>();
-                    users.add(ParseUser.getCurrentUser());
-
-                    // If the current user clicked the like button and has already liked the post before,
-                    // we want to update our Parse database by removing the user from the list of users
-                    // that have liked the post. Else, if the user clicked "like" and has not previously
-                    // liked the post, we want to add the user to the array of users for the current post
-                    if(likes != null && listHasUser(likes, ParseUser.getCurrentUser())) {
-                        post.removeAll(Post.KEY_LIKES, users);
-                    } else {
-                        post.addUnique(Post.KEY_LIKES, ParseUser.getCurrentUser());
-                    }
-                    post.saveInBackground();
-                    notifyItemChanged(position);
+                    toggleLike(getAdapterPosition());
                 }
             });
         }
 
         public void bind(Post post) {
-            // Bind the post data to the view elements
-            String username = post.getUser().getUsername();
+            if(post.getObjectId() != null) {
+                mBoundVersions.put(post.getObjectId(), versionOf(post));
+            }
+            // Bind the post data to the view elements. The creator is shared with every other post
+            // of theirs through the user cache
+            UserCache.Author author = mUserCache.resolve(post.getUser());
+            String username = author.username;
             mUsernameTextView.setText(username);
-            String description = "<b>" + username + "</b>" + " " + post.getDescription();
-            mDescriptionTextView.setText(Html.fromHtml(description));
-            String createdAt = post.getCreatedAt().toString();
-            String timeStamp = getRelativeTimeAgo(createdAt);
-            mTimestampTextView.setText(timeStamp);
+            mCaptionCache.bind(mDescriptionTextView, CaptionCache.keyOf(post), username, post.getDescription());
+            bindProfileImage(author);
+            if(post.isPending()) {
+                bindPending(post);
+                return;
+            }
+            mLikeImageButton.setVisibility(View.VISIBLE);
+            mLikesCountTextView.setVisibility(View.VISIBLE);
+            // Format the timestamp from epoch millis and refresh it once it would read differently
+            long createdAt = post.getCreatedAt().getTime();
+            long now = System.currentTimeMillis();
+            mTimestampTextView.setText(mTimeFormatter.format(createdAt, now));
+            scheduleTimestampTick(mTimeFormatter.millisUntilNextChange(createdAt, now));
 
             // Use Glide to load post image from DB into image view
             // Also confirm that the post has a valid image in DB to load
             ParseFile image = post.getImage();
             if(image != null) {
                 mPostPictureImageView.setVisibility(View.VISIBLE);
-                Glide.with(mContext).load(image.getUrl()).into(mPostPictureImageView);
+                ViewCompat.setTransitionName(mPostPictureImageView, DetailsFragment.imageTransitionName(post.getObjectId()));
+                mImageRequestedAt = System.nanoTime();
+                PostImageRequests.postImage(Glide.with(mContext), image.getUrl())
+                        .listener(mImageLoadListener)
+                        .into(mPostPictureImageView);
             } else {
                 mPostPictureImageView.setVisibility(View.GONE);
             }
 
-            // Use Glide again to load profile image from DB into image view
-            // Confirm that the post has a valid image in DB to load
-            ParseFile profileImage = post.getUser().getParseFile(Post.KEY_PROFILE_IMAGE);
-            if(profileImage != null) {
+            bindLikes(post);
+        }
+
+        // Use Glide to load the profile image of the post's creator into the image view. Every row
+        // of the same creator loads the same URL, so it is only decoded once
+        private void bindProfileImage(UserCache.Author author) {
+            if(author.profileImageUrl != null) {
                 mProfilePictureImageView.setVisibility(View.VISIBLE);
-                Glide.with(mContext).load(profileImage.getUrl()).circleCrop().into(mProfilePictureImageView);
+                PostImageRequests.profileImage(Glide.with(mContext), author.profileImageUrl).into(mProfilePictureImageView);
             } else {
                 mProfilePictureImageView.setVisibility(View.GONE);
             }
+        }
 
-            // Retrieving the list of users that have liked the current Post
-            List<ParseUser> likes = (ArrayList<ParseUser>) post.get("likes");
+        // Binds the parts of a post that is still waiting in the outbox. It cannot be liked yet and
+        // shows its upload state instead of a timestamp
+        private void bindPending(Post post) {
+            mTimestampTextView.setText(post.isUploadFailed() ? "Couldn't post. Tap to retry" : "Posting...");
+            mPostPictureImageView.setVisibility(View.VISIBLE);
+            // A pending post has no details screen to move its picture over to
+            ViewCompat.setTransitionName(mPostPictureImageView, null);
+            mImageRequestedAt = System.nanoTime();
+            PostImageRequests.postImage(Glide.with(mContext), post.getLocalImageFile())
+                    .listener(mImageLoadListener)
+                    .into(mPostPictureImageView);
+            mLikeImageButton.setVisibility(View.GONE);
+            mLikesCountTextView.setVisibility(View.GONE);
+        }
+
+        // Binds only the like button and like count of the post, e.g. after the post was liked
+        public void bindLikes(Post post) {
             int resource;
 
-            // Constructing the correct like count string. Taking into account singular and plural
-            // and accounting for posts with no likes, i.e. likes List will be null
-            int size = (likes == null) ? 0 : likes.size();
-            String likesAppendedWord = (size == 1) ? "like" : "likes";
-            String likesCount = Integer.toString(size) + " " + likesAppendedWord;
-            mLikesCountTextView.setText(likesCount);
+            // The like count string, shared by every post with the same count
+            mLikesCountTextView.setText(LikesLabel.format(mLikeWriter.getDisplayedLikeCount(post)));
 
             // If the current user has liked the current post, change the color of the like button
             // to red. Otherwise change the color of the heart to black
-            if (likes != null && listHasUser(likes, ParseUser.getCurrentUser())) {
+            if (mLikedPostsIndex.isLiked(post.getObjectId())) {
                 mLikeImageButton.setColorFilter(ContextCompat.getColor(mContext, R.color.colorRed));
                 resource = R.drawable.ufi_heart_active;
             } else {
@@ -215,56 +525,40 @@ public class PostsAdapter extends RecyclerView.Adapter<PostsAdapter.ViewHolder>
         @Override
         public void onClick(View view) {
             final int position = getAdapterPosition();
-            // Getting the current post from the List of posts using the adapter position
-            Post post = mPostsList.get(position);
             if(view.getId() == R.id.imageButtonLike) {
-                // Retrieving the array of users that have liked the current post
-                List<ParseUser> likes = (ArrayList<ParseUser>) post.get("likes");
-
-                List<ParseUser> users = new ArrayList<>();
-                users.add(ParseUser.getCurrentUser());
-
-                // If the current user clicked the like button and has already liked the post before,
-                // we want to update our Parse database by removing the user from the list of users
-                // that have liked the post. Else, if the user clicked "like" and has not previously
-                // liked the post, we want to add the user to the array of users for the current post
-                if(likes != null && listHasUser(likes, ParseUser.getCurrentUser())) {
-                    post.removeAll(Post.KEY_LIKES, users);
-                } else {
-                    post.addUnique(Post.KEY_LIKES, ParseUser.getCurrentUser());
-                }
-                post.saveInBackground();
-                notifyItemChanged(position);
+                toggleLike(position);
             } else if(position != RecyclerView.NO_POSITION) {
-                // If anywhere on the item is tapped, launch a new details fragment
-                Fragment fragment = new DetailsFragment();
-
-                // Convert the Parse User post object into a parcelable PostParcel object
-                PostParcel postParcel = new PostParcel();
-                postParcel = postParcel.postParcelFromPostParse(post);
-
-                // Bundle the necessary data to passed to the new fragment
-                Bundle passedData = new Bundle();
-                passedData.putParcelable(PostParcel.class.getSimpleName(), Parcels.wrap(postParcel));
-                fragment.setArguments(passedData);
-
-                ((MainActivity) mContext).getSupportFragmentManager().beginTransaction().replace(R.id.frameLayoutContainer, fragment).commit();
+                // Getting the current post from the List of posts using the adapter position
+                Post post = getItem(position);
+                // A pending post has no details to show yet, but one whose upload gave up can be retried
+                if(post.isPending()) {
+                    if(post.isUploadFailed()) {
+                        PostOutbox.get(mContext).retryFailed();
+                    }
+                    return;
+                }
+                // If anywhere on the item is tapped, launch a new details fragment. It looks the post
+                // up by its objectId and reuses the picture this row decoded
+                Fragment fragment = DetailsFragment.newInstance(post.getObjectId(), mPostPictureImageView, false);
+                ((MainActivity) mContext).showDetails(fragment, mPostPictureImageView);
             }
         }
 
-        // Method for determining if a ParseUser is in a List of Parse Users by comparing the
-        // objectIds. The contains method of the List Collection checks if it is the exact same
-        // object, which causes errors on reloading the app with like functionality.
-        public boolean listHasUser(List<ParseUser> users, ParseUser user) {
-            int i = 0;
-            String currentUserId = user.getObjectId();
-            while(i < users.size()) {
-                if(users.get(i).getObjectId().equals(currentUserId)) {
-                    return true;
-                }
-                i++;
+        // Likes the post at the given position if the current user has not liked it yet, or
+        // removes the like otherwise. The new state is shown right away, through
+        // onLikedStateChanged, and the like writer saves it once the user stops tapping
+        private void toggleLike(int position) {
+            if(position == RecyclerView.NO_POSITION) {
+                return;
+            }
+            // Getting the current post from the List of posts using the adapter position
+            Post post = getItem(position);
+            if(post.isPending()) {
+                return;
+            }
+            if(!mLikeWriter.toggleLike(post)) {
+                Toast.makeText(mContext, "Still loading your likes, try again in a moment", Toast.LENGTH_SHORT).show();
             }
-            return false;
         }
     }
 }
@@ -0,0 +1,119 @@
+package com.example.instagramclone;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.parse.CountCallback;
+import com.parse.ParseException;
+import com.parse.ParseQuery;
+import com.parse.ParseUser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *  ProfileStats provides the numbers shown at the top of a profile, i.e. how
+ *  many posts the user has submitted. The number comes from a count query,
+ *  so the Parse server counts the posts and no post has to be downloaded for
+ *  it. Specifically, this class handles the following features:
+ *      - Counting the posts of a user on the server
+ *      - Caching the count per user on the device for a limited time, so a
+ *      profile shows its count right away
+ *      - Refreshing a count that is older than that in the background and
+ *      handing the new count to the screen once it arrives
+ *      - Forgetting a count once it is known to be out of date, e.g. after
+ *      the user submitted a post
+ */
+public class ProfileStats {
+
+    public static final String TAG = ProfileStats.class.getSimpleName();
+
+    // Counts younger than this are shown without asking the server again
+    private static final long MAX_AGE_MILLIS = 10 * 60 * 1000L;
+
+    private static final String PREFERENCES_NAME = "profile_stats";
+    private static final String KEY_POST_COUNT_PREFIX = "post_count_";
+    private static final String KEY_COUNTED_AT_PREFIX = "counted_at_";
+
+    /**
+     *  Callback for the stats of a user, called on the main thread. Called a first time with the
+     *  cached stats, if any, and again once they were refreshed
+     */
+    public interface Callback {
+        void onStats(int postCount);
+    }
+
+    private static ProfileStats sInstance;
+
+    private final SharedPreferences mPreferences;
+    // Callbacks waiting for the count being fetched, by user. A count is never requested twice at
+    // once, a load while it is being fetched waits for it instead
+    private final Map<String, List<Callback>> mWaiting = new HashMap<>();
+
+    private ProfileStats(Context context) {
+        mPreferences = context.getApplicationContext().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static synchronized ProfileStats get(Context context) {
+        if(sInstance == null) {
+            sInstance = new ProfileStats(context);
+        }
+        return sInstance;
+    }
+
+    // Hands the cached stats of the user to the callback and refreshes them if they are too old
+    // or forceRefresh is set, e.g. when the user pulls to refresh
+    public void load(ParseUser user, boolean forceRefresh, Callback callback) {
+        final String userId = user.getObjectId();
+        long countedAt = mPreferences.getLong(KEY_COUNTED_AT_PREFIX + userId, 0);
+        if(countedAt != 0) {
+            callback.onStats(mPreferences.getInt(KEY_POST_COUNT_PREFIX + userId, 0));
+        }
+        boolean fresh = System.currentTimeMillis() - countedAt < MAX_AGE_MILLIS;
+        if(fresh && !forceRefresh) {
+            return;
+        }
+        List<Callback> waiting = mWaiting.get(userId);
+        if(waiting != null) {
+            waiting.add(callback);
+            return;
+        }
+        waiting = new ArrayList<>();
+        waiting.add(callback);
+        mWaiting.put(userId, waiting);
+        ParseQuery<Post> query = ParseQuery.getQuery(Post.class);
+        query.whereEqualTo(Post.KEY_USER, user);
+        query.countInBackground(new CountCallback() {
+            @Override
+            public void done(int count, ParseException e) {
+                List<Callback> waiting = mWaiting.remove(userId);
+                if(e != null) {
+                    Log.e(TAG, "Issue with counting posts of " + userId, e);
+                    return;
+                }
+                mPreferences.edit()
+                        .putInt(KEY_POST_COUNT_PREFIX + userId, count)
+                        .putLong(KEY_COUNTED_AT_PREFIX + userId, System.currentTimeMillis())
+                        .apply();
+                for(Callback waitingCallback : waiting) {
+                    waitingCallback.onStats(count);
+                }
+            }
+        });
+    }
+
+    // Makes the next load of the user's stats ask the server, e.g. after they submitted a post. The
+    // old count is still shown until the new one arrives
+    public void invalidate(String userId) {
+        if(mPreferences.contains(KEY_COUNTED_AT_PREFIX + userId)) {
+            mPreferences.edit().putLong(KEY_COUNTED_AT_PREFIX + userId, 1).apply();
+        }
+    }
+
+    public void clear() {
+        mPreferences.edit().clear().apply();
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.instagramclone;
+
+import android.text.format.DateUtils;
+import android.util.LongSparseArray;
+
+import com.example.instagramclone.feed.RelativeTimeBuckets;
+
+import java.util.TimeZone;
+
+/**
+ *  RelativeTimeFormatter turns the creation time of a post, given in epoch
+ *  milliseconds, into a relative timestamp such as "3 minutes ago", exactly
+ *  like {@link DateUtils#getRelativeTimeSpanString(long, long, long)} with
+ *  second resolution. It is shared by every screen that shows timestamps and
+ *  is meant to be called from the main thread while binding rows.
+ *  Specifically, this class handles the following features:
+ *      - Sorting a timestamp into its time bucket, e.g. "3 minutes ago" or
+ *      "Yesterday", without allocating, through {@link RelativeTimeBuckets}
+ *      - Caching the rendered string of every bucket, so the formatting work is
+ *      only done the first time a bucket is shown
+ *      - Working out how long a timestamp keeps showing the same string, so
+ *      the timestamps on screen can be refreshed exactly when they change
+ */
+public class RelativeTimeFormatter {
+
+    // Upper bound on the number of rendered strings kept before the cache is emptied
+    private static final int MAX_CACHE_SIZE = 512;
+
+    private static RelativeTimeFormatter sInstance;
+
+    // Rendered strings keyed by bucket. LongSparseArray avoids boxing the keys on every lookup
+    private final LongSparseArray<String> mCache = new LongSparseArray<>();
+    private RelativeTimeBuckets mBuckets = new RelativeTimeBuckets(TimeZone.getDefault());
+
+    private RelativeTimeFormatter() {}
+
+    public static RelativeTimeFormatter get() {
+        if(sInstance == null) {
+            sInstance = new RelativeTimeFormatter();
+        }
+        return sInstance;
+    }
+
+    // Forgets the rendered strings, e.g. because the time zone or language of the device changed
+    public void reset() {
+        mBuckets = new RelativeTimeBuckets(TimeZone.getDefault());
+        mCache.clear();
+    }
+
+    public String format(long timeMillis) {
+        return format(timeMillis, System.currentTimeMillis());
+    }
+
+    public String format(long timeMillis, long nowMillis) {
+        long bucket = mBuckets.bucketOf(timeMillis, nowMillis);
+        String relativeTime = mCache.get(bucket);
+        if(relativeTime == null) {
+            relativeTime = DateUtils.getRelativeTimeSpanString(timeMillis, nowMillis,
+                    DateUtils.SECOND_IN_MILLIS).toString();
+            if(mCache.size() >= MAX_CACHE_SIZE) {
+                mCache.clear();
+            }
+            mCache.put(bucket, relativeTime);
+        }
+        return relativeTime;
+    }
+
+    // How many milliseconds from now the formatted string of the timestamp will change, or
+    // Long.MAX_VALUE if it never will
+    public long millisUntilNextChange(long timeMillis, long nowMillis) {
+        return mBuckets.millisUntilNextChange(timeMillis, nowMillis);
+    }
+}
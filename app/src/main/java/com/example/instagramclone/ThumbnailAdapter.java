@@ -0,0 +1,203 @@
+package com.example.instagramclone;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+import androidx.core.view.ViewCompat;
+import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
+import com.example.instagramclone.fragments.DetailsFragment;
+import com.parse.ParseFile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *  ThumbnailAdapter is a subclass of {@link RecyclerView.Adapter<ThumbnailAdapter.ViewHolder>}.
+ *  It shows posts as a grid of square thumbnails of their pictures, e.g. on the
+ *  profile screen, where many more posts fit on the screen than in the feed.
+ *  Specifically, through its definition of the View Holder class, it handles
+ *  the following features:
+ *      - Inflating a single image view per post instead of the full feed row
+ *      - Decoding every picture at exactly the size of a grid cell, cropped to
+ *      a square, without an alpha channel, so a cell holds a small fraction
+ *      of the memory of a feed row
+ *      - Updating only the cells whose posts were added, moved or changed
+ *      - Showing the posts still waiting in the {@link PostOutbox} first
+ *      - Allowing users to tap on a thumbnail to go to a screen with the
+ *      post's details
+ */
+public class ThumbnailAdapter extends RecyclerView.Adapter<ThumbnailAdapter.ViewHolder>
+        implements FeedImagePreloader.PreloadModelProvider {
+
+    private Context mContext;
+    // Width and height of a cell in pixels, which is also the size the pictures are decoded at
+    private final int mCellSize;
+    private final AsyncListDiffer<Post> mDiffer;
+    // The posts from the database most recently handed to the differ. New pages are appended to it
+    private List<Post> mLatestPostsList = new ArrayList<>();
+    // Posts still waiting in the outbox to be uploaded, shown before the posts from the database
+    private List<Post> mPendingPosts = new ArrayList<>();
+
+    public ThumbnailAdapter(Context mContext, int cellSize) {
+        this.mContext = mContext;
+        this.mCellSize = cellSize;
+        this.mDiffer = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(mContext).inflate(R.layout.item_thumbnail, parent, false);
+        ViewGroup.LayoutParams params = view.getLayoutParams();
+        params.width = mCellSize;
+        params.height = mCellSize;
+        view.setLayoutParams(params);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        holder.bind(getItem(position));
+    }
+
+    // The layout is the view type, so lists sharing a pool of recycled views never mix up rows
+    @Override
+    public int getItemViewType(int position) {
+        return R.layout.item_thumbnail;
+    }
+
+    @Override
+    public int getItemCount() {
+        return mDiffer.getCurrentList().size();
+    }
+
+    public Post getItem(int position) {
+        return mDiffer.getCurrentList().get(position);
+    }
+
+    // Replace the posts from the database, e.g. after a refresh
+    public void setPosts(List<Post> posts) {
+        mLatestPostsList = new ArrayList<>(posts);
+        submitPosts();
+    }
+
+    // Replace the pending posts shown first
+    public void setPendingPosts(List<Post> pendingPosts) {
+        mPendingPosts = new ArrayList<>(pendingPosts);
+        submitPosts();
+    }
+
+    // Append a list of posts to the end of the grid, e.g. the next page of posts
+    public void addAll(List<Post> posts) {
+        List<Post> newPostsList = new ArrayList<>(mLatestPostsList);
+        newPostsList.addAll(posts);
+        setPosts(newPostsList);
+    }
+
+    // Request for the thumbnail of the post at the position, exactly as its cell will request it
+    @Override
+    public List<RequestBuilder<Drawable>> getPreloadRequests(RequestManager glide, int position) {
+        if(position >= getItemCount()) {
+            return Collections.emptyList();
+        }
+        RequestBuilder<Drawable> request = thumbnailRequest(glide, getItem(position));
+        return (request == null) ? Collections.<RequestBuilder<Drawable>>emptyList() : Collections.singletonList(request);
+    }
+
+    private RequestBuilder<Drawable> thumbnailRequest(RequestManager glide, Post post) {
+        if(post.isPending()) {
+            return PostImageRequests.thumbnail(glide, post.getLocalImageFile(), mCellSize);
+        }
+        ParseFile image = post.getImage();
+        return (image == null) ? null : PostImageRequests.thumbnail(glide, image.getUrl(), mCellSize);
+    }
+
+    private void submitPosts() {
+        List<Post> posts = new ArrayList<>(mPendingPosts);
+        posts.addAll(mLatestPostsList);
+        mDiffer.submitList(posts);
+    }
+
+    // A cell only shows the picture of its post, so it only changes when the picture does. Pending
+    // posts are identified by their outbox id as they have no objectId yet
+    private static final DiffUtil.ItemCallback<Post> DIFF_CALLBACK = new DiffUtil.ItemCallback<Post>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Post oldPost, @NonNull Post newPost) {
+            if(oldPost.isPending() || newPost.isPending()) {
+                return equalOrBothNull(oldPost.getOutboxId(), newPost.getOutboxId());
+            }
+            return equalOrBothNull(oldPost.getObjectId(), newPost.getObjectId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Post oldPost, @NonNull Post newPost) {
+            if(oldPost.isPending()) {
+                return true;
+            }
+            ParseFile oldImage = oldPost.getImage();
+            ParseFile newImage = newPost.getImage();
+            return equalOrBothNull(oldImage == null ? null : oldImage.getUrl(),
+                    newImage == null ? null : newImage.getUrl());
+        }
+    };
+
+    private static boolean equalOrBothNull(Object a, Object b) {
+        return (a == null) ? b == null : a.equals(b);
+    }
+
+    class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+
+        private ImageView mThumbnailImageView;
+
+        public ViewHolder(@NonNull View itemView) {
+            super(itemView);
+            mThumbnailImageView = itemView.findViewById(R.id.imageViewThumbnail);
+            itemView.setOnClickListener(this);
+        }
+
+        public void bind(Post post) {
+            RequestBuilder<Drawable> request = thumbnailRequest(Glide.with(mContext), post);
+            if(request != null) {
+                request.into(mThumbnailImageView);
+            } else {
+                Glide.with(mContext).clear(mThumbnailImageView);
+            }
+            ViewCompat.setTransitionName(mThumbnailImageView,
+                    post.isPending() ? null : DetailsFragment.imageTransitionName(post.getObjectId()));
+            // Pending posts are dimmed until they are uploaded
+            mThumbnailImageView.setAlpha(post.isPending() ? 0.5f : 1f);
+        }
+
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if(position == RecyclerView.NO_POSITION) {
+                return;
+            }
+            Post post = getItem(position);
+            // A pending post has no details to show yet, but one whose upload gave up can be retried
+            if(post.isPending()) {
+                if(post.isUploadFailed()) {
+                    PostOutbox.get(mContext).retryFailed();
+                }
+                return;
+            }
+            // Launch the same details screen the feed opens, which starts out with this thumbnail
+            Fragment fragment = DetailsFragment.newInstance(post.getObjectId(), mThumbnailImageView, true);
+            ((MainActivity) mContext).showDetails(fragment, mThumbnailImageView);
+        }
+    }
+}
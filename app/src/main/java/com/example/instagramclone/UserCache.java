@@ -0,0 +1,97 @@
+package com.example.instagramclone;
+
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+
+import com.parse.ParseFile;
+import com.parse.ParseUser;
+
+/**
+ *  UserCache is the registry of the creators of the posts shown in the app.
+ *  A page of posts includes a copy of its creator in every post, so the same
+ *  user appears many times, and the feed, profile and details screens only
+ *  need their username and profile picture. Specifically, this class handles
+ *  the following features:
+ *      - Keeping a single entry per user, keyed by objectId, across queries
+ *      and screens
+ *      - Resolving the profile picture of a user to its URL once, so every
+ *      row of that user loads the exact same URL and Glide decodes it once
+ *      - Updating the entry when a query returns newer data for the user,
+ *      and keeping the entry when a query only returned a pointer to them
+ *      - Evicting the least recently used users beyond a maximum number
+ */
+public class UserCache {
+
+    private static final int MAX_USERS = 300;
+
+    /**
+     *  What the app shows of a user
+     */
+    public static class Author {
+        public final String objectId;
+        public final String username;
+        // URL of the profile picture, or null if the user has none
+        public final String profileImageUrl;
+
+        Author(String objectId, String username, String profileImageUrl) {
+            this.objectId = objectId;
+            this.username = username;
+            this.profileImageUrl = profileImageUrl;
+        }
+
+        boolean sameAs(String username, String profileImageUrl) {
+            return equalOrBothNull(this.username, username) && equalOrBothNull(this.profileImageUrl, profileImageUrl);
+        }
+    }
+
+    private static UserCache sInstance;
+
+    // LruCache is thread safe, so users can be resolved from background threads too
+    private final LruCache<String, Author> mAuthors = new LruCache<>(MAX_USERS);
+
+    private UserCache() {}
+
+    public static synchronized UserCache get() {
+        if(sInstance == null) {
+            sInstance = new UserCache();
+        }
+        return sInstance;
+    }
+
+    // The entry of the user, updated with their data if the user object holds any
+    public Author resolve(ParseUser user) {
+        String objectId = user.getObjectId();
+        Author cached = (objectId == null) ? null : mAuthors.get(objectId);
+        // A pointer without data, e.g. from a query that did not include the user
+        if(!user.isDataAvailable(Post.KEY_USERNAME)) {
+            return (cached != null) ? cached : new Author(objectId, null, null);
+        }
+        String username = user.getUsername();
+        ParseFile profileImage = user.isDataAvailable(Post.KEY_PROFILE_IMAGE)
+                ? user.getParseFile(Post.KEY_PROFILE_IMAGE) : null;
+        String profileImageUrl = (profileImage == null) ? null : profileImage.getUrl();
+        if(cached != null && cached.sameAs(username, profileImageUrl)) {
+            return cached;
+        }
+        Author author = new Author(objectId, username, profileImageUrl);
+        if(objectId != null) {
+            mAuthors.put(objectId, author);
+        }
+        return author;
+    }
+
+    // The entry of the user with the objectId, or null if they have not been resolved yet
+    @Nullable
+    public Author get(String objectId) {
+        return (objectId == null) ? null : mAuthors.get(objectId);
+    }
+
+    public void clear() {
+        mAuthors.evictAll();
+    }
+
+    private static boolean equalOrBothNull(Object a, Object b) {
+        return (a == null) ? b == null : a.equals(b);
+    }
+}
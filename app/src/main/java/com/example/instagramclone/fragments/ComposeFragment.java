@@ -1,8 +1,6 @@
 package com.example.instagramclone.fragments;
 
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
 
@@ -20,17 +18,18 @@ import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.ImageView;
+import android.widget.ProgressBar;
 import android.widget.Toast;
 
+import com.example.instagramclone.ImageTranscoder;
+import com.example.instagramclone.ImageUpload;
 import com.example.instagramclone.MainActivity;
-import com.example.instagramclone.Post;
+import com.example.instagramclone.PostOutbox;
 import com.example.instagramclone.R;
 import com.parse.ParseException;
-import com.parse.ParseFile;
-import com.parse.ParseUser;
-import com.parse.SaveCallback;
 
 import java.io.File;
+import java.io.IOException;
 
 import static android.app.Activity.RESULT_OK;
 
@@ -43,22 +42,38 @@ import static android.app.Activity.RESULT_OK;
  *      for a post
  *      - Acquiring the photo users take with their camera from the phone's
  *      file system and displaying it for preview within the app
+ *      - Turning the photo upright and shrinking it in the background so
+ *      a much smaller file is uploaded
+ *      - Uploading the image while the user writes the caption, showing its
+ *      progress, and cancelling it when the photo is retaken or the screen
+ *      is closed without submitting the post
  *      - Allowing users to write a caption for their post
  *      - Allowing users to hit button to upload their new post to the
- *      Parse database
+ *      Parse database, through the {@link PostOutbox} so the post is not
+ *      lost if the upload fails or the app is closed. The outbox takes over
+ *      the image upload, so usually only the post itself is left to save
  */
 public class ComposeFragment extends Fragment {
 
     public static final String TAG = ComposeFragment.class.getSimpleName();
     public static final int CAPTURE_IMAGE_ACTIVITY_REQUEST_CODE = 46;
+    private static final String PHOTO_FILE_NAME = "photo";
+    private static final String UPLOAD_FILE_NAME = "upload";
 
     private EditText mDescriptionEditText;
     private Button mCaptureImageButton;
     private ImageView mPostPictureImageView;
     private Button mSubmitButton;
+    private ProgressBar mUploadProgressBar;
 
     private File mPhotoFile;
-    private String mPhotoFileName = "photo.jpg";
+    // The downscaled, upright copy of the photo that actually gets uploaded
+    private File mUploadFile;
+    private ImageTranscoder mImageTranscoder = new ImageTranscoder(false);
+    // Incremented on every capture so the transcoding result of an earlier photo is ignored
+    private int mCaptureCount;
+    // The upload of mUploadFile, started as soon as the photo is ready
+    private ImageUpload mImageUpload;
 
     public ComposeFragment() {
         // Required empty public constructor
@@ -80,6 +95,7 @@ public class ComposeFragment extends Fragment {
         mCaptureImageButton = view.findViewById(R.id.buttonCaptureImage);
         mPostPictureImageView = view.findViewById(R.id.imageViewPost);
         mSubmitButton = view.findViewById(R.id.buttonSubmit);
+        mUploadProgressBar = view.findViewById(R.id.progressBarUpload);
         mPostPictureImageView.setVisibility(View.GONE);
 
         mCaptureImageButton.setOnClickListener(new View.OnClickListener() {
@@ -98,17 +114,11 @@ public class ComposeFragment extends Fragment {
                     Toast.makeText(getContext(), "Description cannot be empty", Toast.LENGTH_SHORT).show();
                     return;
                 }
-                if(mPhotoFile == null || mPostPictureImageView.getDrawable() == null) {
+                if(mUploadFile == null || mPostPictureImageView.getDrawable() == null) {
                     Toast.makeText(getContext(), "There is no image!", Toast.LENGTH_SHORT).show();
                     return;
                 }
-                ParseUser currentUser = ParseUser.getCurrentUser();
-                savePost(description, currentUser, mPhotoFile);
-                Toast.makeText(getContext(), "Post Successful!", Toast.LENGTH_LONG).show();
-
-                Fragment fragment = new PostsFragment();
-
-                ((MainActivity) getContext()).getSupportFragmentManager().beginTransaction().replace(R.id.frameLayoutContainer, fragment).commit();
+                savePost(description);
             }
         });
 
@@ -120,8 +130,9 @@ public class ComposeFragment extends Fragment {
     private void launchCamera() {
         // create Intent to take a picture and return control to the calling application
         Intent intent = new Intent(MediaStore.ACTION_IMAGE_CAPTURE);
-        // Create a File reference for future access
-        mPhotoFile = getPhotoFileUri(mPhotoFileName);
+        // Create a File reference for future access. Every photo gets a file of its own, so a new
+        // photo never overwrites one that is still being processed
+        mPhotoFile = getPhotoFileUri(PHOTO_FILE_NAME + "_" + System.currentTimeMillis() + ".jpg");
 
         // wrap File object into a content provider
         // required for API >= 24
@@ -142,18 +153,91 @@ public class ComposeFragment extends Fragment {
         super.onActivityResult(requestCode, resultCode, data);
         if (requestCode == CAPTURE_IMAGE_ACTIVITY_REQUEST_CODE) {
             if (resultCode == RESULT_OK) {
-                // by this point we have the camera photo on disk
-                Bitmap takenImage = BitmapFactory.decodeFile(mPhotoFile.getAbsolutePath());
-                // RESIZE BITMAP, see section below
-                // Load the taken image into a preview
-                mPostPictureImageView.setVisibility(View.VISIBLE);
-                mPostPictureImageView.setImageBitmap(takenImage);
+                // by this point we have the camera photo on disk. Turn it upright, shrink it for
+                // upload and decode a small preview in the background instead of decoding the
+                // full-size photo on the main thread. The upload copy of an earlier photo is replaced
+                discardUpload();
+                final int captureCount = ++mCaptureCount;
+                final File photoFile = mPhotoFile;
+                File uploadFile = getPhotoFileUri(UPLOAD_FILE_NAME + "_" + System.currentTimeMillis()
+                        + mImageTranscoder.getFileExtension());
+                int previewMaxEdge = getResources().getDisplayMetrics().widthPixels;
+                mImageTranscoder.transcode(photoFile, uploadFile, previewMaxEdge, new ImageTranscoder.Callback() {
+                    @Override
+                    public void onTranscoded(ImageTranscoder.Result result) {
+                        // The full-size photo is not needed once the upload copy is written
+                        photoFile.delete();
+                        // Another photo was taken meanwhile or the user left the screen
+                        if(captureCount != mCaptureCount || getView() == null) {
+                            result.uploadFile.delete();
+                            return;
+                        }
+                        mUploadFile = result.uploadFile;
+                        // Load the taken image into a preview
+                        mPostPictureImageView.setVisibility(View.VISIBLE);
+                        mPostPictureImageView.setImageBitmap(result.preview);
+                        startUpload(result.uploadFile);
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        if(captureCount != mCaptureCount || getView() == null) {
+                            return;
+                        }
+                        Toast.makeText(getContext(), "Could not process picture!", Toast.LENGTH_SHORT).show();
+                    }
+                });
             } else { // Result was a failure
                 Toast.makeText(getContext(), "Picture wasn't taken!", Toast.LENGTH_SHORT).show();
             }
         }
     }
 
+    // The screen is gone without the photo being posted, so its upload is abandoned
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        discardUpload();
+    }
+
+    // Starts uploading the image while the user writes the caption, so submitting only has to save
+    // the post itself
+    private void startUpload(File uploadFile) {
+        mUploadProgressBar.setProgress(0);
+        mUploadProgressBar.setVisibility(View.VISIBLE);
+        mImageUpload = ImageUpload.start(uploadFile, new ImageUpload.Listener() {
+            @Override
+            public void onProgress(int percentDone) {
+                if(getView() != null) {
+                    mUploadProgressBar.setProgress(percentDone);
+                }
+            }
+
+            @Override
+            public void onDone(ParseException e) {
+                // A failed upload is retried by the outbox once the post is submitted
+                if(getView() != null) {
+                    mUploadProgressBar.setVisibility(View.GONE);
+                }
+            }
+        });
+    }
+
+    // Cancels the upload of the current photo and deletes its upload copy, e.g. when it is retaken
+    private void discardUpload() {
+        if(mImageUpload != null) {
+            mImageUpload.cancel();
+            mImageUpload = null;
+        }
+        if(mUploadFile != null) {
+            mUploadFile.delete();
+            mUploadFile = null;
+        }
+        if(mUploadProgressBar != null) {
+            mUploadProgressBar.setVisibility(View.GONE);
+        }
+    }
+
     // Returns the File for a photo stored on disk given the fileName
     private File getPhotoFileUri(String fileName) {
         // Get safe storage directory for photos
@@ -170,29 +254,52 @@ public class ComposeFragment extends Fragment {
         return new File(mediaStorageDir.getPath() + File.separator + fileName);
     }
 
-    // Takes in a description and user to fill in required fields for post objects in our Parse DB
-    private void savePost(String description, ParseUser currentUser, File photoFile) {
-        Post post = new Post();
-        post.setDescription(description);
-        post.setUser(currentUser);
-        post.setImage(new ParseFile(photoFile));
-
-        // Executes query on a background thread to prevent disruption of main thread for improved
-        // user experience
-        post.saveInBackground(new SaveCallback() {
+    // Adds the post to the outbox, which uploads it in the background and keeps retrying until
+    // it is saved, even if the app is closed meanwhile
+    private void savePost(String description) {
+        // The outbox owns the file and the upload from now on, unless it could not store the post
+        final File uploadFile = mUploadFile;
+        final ImageUpload imageUpload = mImageUpload;
+        mUploadFile = null;
+        mImageUpload = null;
+        mSubmitButton.setEnabled(false);
+        PostOutbox.get(getContext()).enqueue(description, uploadFile, imageUpload, new PostOutbox.EnqueueCallback() {
             @Override
-            public void done(ParseException e) {
+            public void done(IOException e) {
                 if(e != null) {
                     Log.e(TAG, "Error saving post", e);
-                    Toast.makeText(getContext(), "Error while saving", Toast.LENGTH_SHORT).show();
+                    // Hand the photo back, unless another one was taken or the screen is gone
+                    if(getView() == null || mUploadFile != null) {
+                        if(imageUpload != null) {
+                            imageUpload.cancel();
+                        }
+                        uploadFile.delete();
+                    } else {
+                        mUploadFile = uploadFile;
+                        mImageUpload = imageUpload;
+                    }
+                    if(getView() != null) {
+                        mSubmitButton.setEnabled(true);
+                        Toast.makeText(getContext(), "Error while saving", Toast.LENGTH_SHORT).show();
+                    }
                     return;
                 }
-                Log.i(TAG, "Post saved successfully");
+                Log.i(TAG, "Post added to the outbox");
+                if(getView() == null) {
+                    return;
+                }
+                mSubmitButton.setEnabled(true);
+                mUploadProgressBar.setVisibility(View.GONE);
                 // Clear our description field to give user more visual confirmation of success
                 mDescriptionEditText.setText("");
                 // Clear out image view for more confirmation of save success
                 mPostPictureImageView.setImageResource(0);
+                // The post is safe on the device now and shows in the feed until it is uploaded
+                Toast.makeText(getContext(), "Posting...", Toast.LENGTH_SHORT).show();
+
+                // Go back to the feed, which already shows the new post at the top
+                ((MainActivity) getContext()).selectTab(R.id.action_home);
             }
         });
     }
-}
\ No newline at end of file
+}
@@ -1,13 +1,14 @@
 package com.example.instagramclone.fragments;
 
+import android.graphics.drawable.Drawable;
 import android.os.Bundle;
+import android.transition.TransitionInflater;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.core.view.ViewCompat;
 import androidx.fragment.app.Fragment;
 
-import android.text.Html;
-import android.text.format.DateUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -15,14 +16,25 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.example.instagramclone.PostParcel;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
+import com.example.instagramclone.CaptionCache;
+import com.example.instagramclone.LikeWriteCoalescer;
+import com.example.instagramclone.LikedPostsIndex;
+import com.example.instagramclone.Post;
+import com.example.instagramclone.PostImageRequests;
+import com.example.instagramclone.PostRepository;
 import com.example.instagramclone.R;
-
-import org.parceler.Parcels;
-
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Locale;
+import com.example.instagramclone.RelativeTimeFormatter;
+import com.example.instagramclone.UserCache;
+import com.example.instagramclone.feed.LikesLabel;
+import com.parse.GetCallback;
+import com.parse.ParseException;
+import com.parse.ParseFile;
 
 /**
  *  DetailsFragment is a subclass of {@link Fragment}. It handles much of
@@ -33,8 +45,25 @@ import java.util.Locale;
  *      username of the post's creator, the uploaded picture of the post, the
  *      number of likes the post has, the post's caption, and the post's timestamp
  *      - Enlarging the post's uploaded picture for better visibility
+ *      - Looking the post up by its objectId in the {@link PostRepository}, so
+ *      the screen shows the very post the list it was opened from shows
+ *      - Showing the picture the list already decoded right away, moving it
+ *      over from the list with a shared element transition, and only loading
+ *      a larger variant when the list showed a thumbnail
+ *      - Keeping the like count up to date while the screen is shown
  */
-public class DetailsFragment extends Fragment {
+public class DetailsFragment extends Fragment
+        implements LikedPostsIndex.Listener, LikeWriteCoalescer.Listener {
+
+    public static final String TAG = DetailsFragment.class.getSimpleName();
+
+    private static final String ARG_POST_ID = "post_id";
+    // Size of the image view the list showed the picture in, and whether it was a grid thumbnail
+    private static final String ARG_SOURCE_WIDTH = "source_width";
+    private static final String ARG_SOURCE_HEIGHT = "source_height";
+    private static final String ARG_SOURCE_THUMBNAIL = "source_thumbnail";
+    // Longest the transition waits for the picture before it runs without it
+    private static final long MAX_TRANSITION_DELAY_MILLIS = 500;
 
     private TextView mUsernameTextView;
     private ImageView mPostPictureImageView;
@@ -42,11 +71,61 @@ public class DetailsFragment extends Fragment {
     private ImageView mProfilePictureImageView;
     private TextView mTimestampTextView;
     private TextView mLikesCountTextView;
+    private String mPostId;
+    // The post shown, or null until it was found
+    private Post mPost;
+
+    private final Runnable mStartTransitionRunnable = new Runnable() {
+        @Override
+        public void run() {
+            startPostponedEnterTransition();
+        }
+    };
+
+    // Starts the transition as soon as the picture the list showed is taken from the cache. A
+    // miss is ignored, the full picture or the timeout starts it then
+    private final RequestListener<Drawable> mCachedPictureListener = new RequestListener<Drawable>() {
+        @Override
+        public boolean onLoadFailed(@Nullable GlideException e, Object model, Target<Drawable> target, boolean isFirstResource) {
+            return false;
+        }
+
+        @Override
+        public boolean onResourceReady(Drawable resource, Object model, Target<Drawable> target, DataSource dataSource, boolean isFirstResource) {
+            startPostponedEnterTransition();
+            return false;
+        }
+    };
 
     public DetailsFragment() {
         // Required empty public constructor
     }
 
+    // Details of the post with the objectId, opened from the image view that shows its picture in a
+    // list. The image view is moved over to this screen, and the picture it shows is reused
+    public static DetailsFragment newInstance(String postId, ImageView sourceImageView, boolean sourceIsThumbnail) {
+        Bundle args = new Bundle();
+        args.putString(ARG_POST_ID, postId);
+        args.putInt(ARG_SOURCE_WIDTH, sourceImageView.getWidth());
+        args.putInt(ARG_SOURCE_HEIGHT, sourceImageView.getHeight());
+        args.putBoolean(ARG_SOURCE_THUMBNAIL, sourceIsThumbnail);
+        DetailsFragment fragment = new DetailsFragment();
+        fragment.setArguments(args);
+        return fragment;
+    }
+
+    // Name the picture of the post goes by in shared element transitions, the same in every list
+    public static String imageTransitionName(String postId) {
+        return "post_image_" + postId;
+    }
+
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        mPostId = getArguments().getString(ARG_POST_ID);
+        setSharedElementEnterTransition(TransitionInflater.from(getContext()).inflateTransition(android.R.transition.move));
+    }
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
@@ -65,59 +144,131 @@ public class DetailsFragment extends Fragment {
         mTimestampTextView = view.findViewById(R.id.textViewTime);
         mLikesCountTextView = view.findViewById(R.id.textViewLikes);
 
-        // Get the passed Post object
-        PostParcel post = Parcels.unwrap(getArguments().getParcelable(PostParcel.class.getSimpleName()));
+        ViewCompat.setTransitionName(mPostPictureImageView, imageTransitionName(mPostId));
+        // Wait for the picture before moving it over from the list, but not for a slow network
+        postponeEnterTransition();
+        view.postDelayed(mStartTransitionRunnable, MAX_TRANSITION_DELAY_MILLIS);
 
-        // Bind the post data to the view elements
-        String username = post.getUsername();
-        mUsernameTextView.setText(username);
-        String description = "<b>" + username + "</b>" + " " + post.getDescription();
-        mDescriptionTextView.setText(Html.fromHtml(description));
-        mTimestampTextView.setText(post.getTimeStamp());
+        LikedPostsIndex.get().addListener(this);
+        LikeWriteCoalescer.get().addListener(this);
+
+        // Get the post the list shows. It is only queried if no list holds it anymore
+        PostRepository.get(getContext()).findPost(mPostId, new GetCallback<Post>() {
+            @Override
+            public void done(Post post, ParseException e) {
+                if(getView() == null) {
+                    return;
+                }
+                if(e != null || post == null) {
+                    startPostponedEnterTransition();
+                    return;
+                }
+                mPost = post;
+                bind(post);
+            }
+        });
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        getView().removeCallbacks(mStartTransitionRunnable);
+        LikedPostsIndex.get().removeListener(this);
+        LikeWriteCoalescer.get().removeListener(this);
+    }
+
+    @Override
+    public void onLikedStateChanged(String postId) {
+        if(postId.equals(mPostId)) {
+            bindLikes();
+        }
+    }
+
+    @Override
+    public void onIndexChanged() {
+        bindLikes();
+    }
+
+    @Override
+    public void onLikeCountChanged(String postId) {
+        onLikedStateChanged(postId);
+    }
+
+    private void bind(Post post) {
+        // Bind the post data to the view elements. The creator is shared with the list through the
+        // user cache
+        UserCache.Author author = UserCache.get().resolve(post.getUser());
+        mUsernameTextView.setText(author.username);
+        // Reuses the caption the list already built for this version of the post
+        CaptionCache.get().bind(mDescriptionTextView, CaptionCache.keyOf(post), author.username, post.getDescription());
+        mTimestampTextView.setText(RelativeTimeFormatter.get().format(post.getCreatedAt().getTime()));
 
         // Use Glide to load post image from DB into image view
         // Also confirm that the post has a valid image in DB to load
-
-        if(post.getPostImageUrl() != null) {
+        ParseFile image = post.getImage();
+        if(image != null) {
             mPostPictureImageView.setVisibility(View.VISIBLE);
-            Glide.with(getContext()).load(post.getPostImageUrl()).into(mPostPictureImageView);
+            postImageRequest(Glide.with(this), image.getUrl())
+                    .dontAnimate()
+                    .listener(new RequestListener<Drawable>() {
+                        @Override
+                        public boolean onLoadFailed(@Nullable GlideException e, Object model, Target<Drawable> target, boolean isFirstResource) {
+                            startPostponedEnterTransition();
+                            return false;
+                        }
+
+                        @Override
+                        public boolean onResourceReady(Drawable resource, Object model, Target<Drawable> target, DataSource dataSource, boolean isFirstResource) {
+                            startPostponedEnterTransition();
+                            return false;
+                        }
+                    })
+                    .into(mPostPictureImageView);
         } else {
             mPostPictureImageView.setVisibility(View.GONE);
+            startPostponedEnterTransition();
         }
 
         // Use Glide again to load profile image from DB into image view
         // Confirm that the post has a valid image in DB to load
 
-        if(post.getProfileImageUrl() != null) {
+        if(author.profileImageUrl != null) {
             mProfilePictureImageView.setVisibility(View.VISIBLE);
-            Glide.with(getContext()).load(post.getProfileImageUrl()).circleCrop().into(mProfilePictureImageView);
+            PostImageRequests.profileImage(Glide.with(this), author.profileImageUrl).into(mProfilePictureImageView);
         } else {
             mProfilePictureImageView.setVisibility(View.GONE);
         }
-        // Constructing the correct like count string. Taking into account singular and plural
-        // and accounting for posts with no likes, i.e. likes List will be null
-
-        String likesAppendedWord = (post.getLikeCount() == 1) ? "like" : "likes";
-        String likesCount = Integer.toString(post.getLikeCount()) + " " + likesAppendedWord;
-        mLikesCountTextView.setText(likesCount);
 
+        bindLikes();
     }
 
-    // getRelativeTimeAgo("Thu Jul 09 17:20:55 EDT 2020")
-    public String getRelativeTimeAgo(String rawJsonDate) {
-        String instaFormat = "EEE MMM dd HH:mm:ss ZZZ yyyy";
-        SimpleDateFormat sf = new SimpleDateFormat(instaFormat, Locale.ENGLISH);
-        sf.setLenient(true);
-
-        String relativeDate = "";
-        try {
-            long dateMillis = sf.parse(rawJsonDate).getTime();
-            relativeDate = DateUtils.getRelativeTimeSpanString(dateMillis,
-                    System.currentTimeMillis(), DateUtils.SECOND_IN_MILLIS).toString();
-        } catch (ParseException e) {
-            e.printStackTrace();
+    // The picture is loaded at the size of this screen. Meanwhile the picture the list decoded is
+    // shown from the memory cache, i.e. the exact request of the feed row, sized to its image view,
+    // or the small thumbnail of the grid cell
+    private RequestBuilder<Drawable> postImageRequest(RequestManager glide, String url) {
+        Bundle args = getArguments();
+        int sourceWidth = args.getInt(ARG_SOURCE_WIDTH);
+        int sourceHeight = args.getInt(ARG_SOURCE_HEIGHT);
+        if(sourceWidth <= 0 || sourceHeight <= 0) {
+            return PostImageRequests.postImage(glide, url);
         }
+        RequestBuilder<Drawable> cachedPicture = args.getBoolean(ARG_SOURCE_THUMBNAIL)
+                ? PostImageRequests.thumbnail(glide, url, sourceWidth)
+                : PostImageRequests.postImage(glide, url).override(sourceWidth, sourceHeight);
+        return PostImageRequests.postImage(glide, url)
+                .thumbnail(cachedPicture.onlyRetrieveFromCache(true).dontAnimate().listener(mCachedPictureListener));
+    }
 
-        return relativeDate;
+    // Shows the like count currently shown everywhere in the app
+    private void bindLikes() {
+        if(mPost == null || getView() == null) {
+            return;
+        }
+        // A refresh of the list may have replaced the post with a newer instance
+        Post latest = PostRepository.get(getContext()).getCachedPost(mPostId);
+        if(latest != null) {
+            mPost = latest;
+        }
+        mLikesCountTextView.setText(LikesLabel.format(LikeWriteCoalescer.get().getDisplayedLikeCount(mPost)));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,95 @@
+package com.example.instagramclone.fragments;
+
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+
+import com.example.instagramclone.R;
+import com.example.instagramclone.metrics.FeedMetrics;
+import com.example.instagramclone.metrics.NetworkMetricsInterceptor;
+
+/**
+ *  DiagnosticsFragment is a subclass of {@link Fragment}. It shows how the
+ *  app performs on the device, so slowness can be traced to the server, the
+ *  size of the responses or the device itself. Specifically, this class
+ *  handles the following features:
+ *      - Showing the numbers the {@link NetworkMetricsInterceptor} keeps per
+ *      endpoint, e.g. latency, bytes, status codes and retries
+ *      - Showing the scroll frame timings and row latencies of the
+ *      {@link FeedMetrics}
+ *      - Refreshing the numbers once a second while the screen is shown
+ *      - Allowing users to reset every number, e.g. before measuring a single
+ *      refresh of the feed
+ */
+public class DiagnosticsFragment extends Fragment {
+
+    private static final long REFRESH_MILLIS = 1000;
+
+    private TextView mMetricsTextView;
+
+    private final Runnable mRefresh = new Runnable() {
+        @Override
+        public void run() {
+            showMetrics();
+            mMetricsTextView.postDelayed(this, REFRESH_MILLIS);
+        }
+    };
+
+    public DiagnosticsFragment() {
+        // Required empty public constructor
+    }
+
+    @Override
+    public View onCreateView(LayoutInflater inflater, ViewGroup container,
+                             Bundle savedInstanceState) {
+        // Inflate the layout for this fragment
+        return inflater.inflate(R.layout.fragment_diagnostics, container, false);
+    }
+
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+
+        mMetricsTextView = view.findViewById(R.id.textViewMetrics);
+        Button resetButton = view.findViewById(R.id.buttonResetMetrics);
+        resetButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                NetworkMetricsInterceptor.get().reset();
+                FeedMetrics.get().reset();
+                showMetrics();
+            }
+        });
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        mMetricsTextView.post(mRefresh);
+    }
+
+    @Override
+    public void onStop() {
+        super.onStop();
+        mMetricsTextView.removeCallbacks(mRefresh);
+    }
+
+    private void showMetrics() {
+        StringBuilder text = new StringBuilder("Network\n");
+        for(NetworkMetricsInterceptor.EndpointStats stats : NetworkMetricsInterceptor.get().getEndpoints()) {
+            text.append(stats.summary()).append('\n');
+        }
+        text.append("\nFeed\n");
+        for(String line : FeedMetrics.get().summary()) {
+            text.append(line).append('\n');
+        }
+        mMetricsTextView.setText(text);
+    }
+}
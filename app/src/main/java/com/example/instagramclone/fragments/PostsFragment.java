@@ -5,46 +5,84 @@ import android.os.Bundle;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.Observer;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.widget.ProgressBar;
-
-import com.example.instagramclone.Post;
+import android.widget.Toast;
+
+import com.bumptech.glide.Glide;
+import com.example.instagramclone.BuildConfig;
+import com.example.instagramclone.EndlessRecyclerViewScrollListener;
+import com.example.instagramclone.FeedImagePreloader;
+import com.example.instagramclone.PostOutbox;
+import com.example.instagramclone.PostRepository;
 import com.example.instagramclone.PostsAdapter;
 import com.example.instagramclone.R;
-import com.parse.FindCallback;
+import com.example.instagramclone.metrics.FeedMetrics;
+import com.example.instagramclone.metrics.ScrollFrameRecorder;
+import com.example.instagramclone.metrics.StartupMetrics;
 import com.parse.ParseException;
-import com.parse.ParseQuery;
-
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  *  PostsFragment is a subclass of {@link Fragment}. It handles
  *  some functionality of the "home" screen for users, i.e. a feed of the
- *  last 20 posts submitted to the Parse database that the InstagramClone
- *  app uses. Specifically, this class handles the following features:
- *      - Querying the Parse database for the last 20 submitted posts
- *      - Displaying the retrieved, most-recent 20 posts by setting up
- *      the Recycler View in which these posts will be shown
+ *  posts submitted to the Parse database that the InstagramClone app uses,
+ *  newest first. Specifically, this class handles the following features:
+ *      - Querying the Parse database for the most-recent page of posts
+ *      - Displaying the retrieved posts by setting up the Recycler View in
+ *      which these posts will be shown
+ *      - Loading the next page of older posts as the user nears the bottom
+ *      of the feed (endless scrolling)
  *      - Allowing users to swipe from the top of their screens to refresh
  *      by handling the re-querying of the database
+ *      - Observing the feed through the {@link PostRepository}, so the posts
+ *      already loaded, or stored on the device, show right away and the
+ *      database is only queried again once they are stale
  */
 public class PostsFragment extends Fragment {
 
     public static final String TAG = PostsFragment.class.getSimpleName();
+    // Number of rows whose images are preloaded when scrolling slowly and when flinging
+    private static final int MIN_PRELOAD_ROWS = 2;
+    private static final int MAX_PRELOAD_ROWS = 6;
+    // How many rows scrolled out of the list are kept for reuse
+    private static final int MAX_RECYCLED_POSTS = 8;
+
+    private static boolean sProjectionSavingsLogged;
 
     private RecyclerView mPostsRecyclerView;
     protected SwipeRefreshLayout mSwipeContainer;
     protected PostsAdapter mAdapter;
-    protected List<Post> mAllPostsList;
     protected ProgressBar mProgresBar;
+    protected FeedImagePreloader mImagePreloader;
+    protected ScrollFrameRecorder mFrameRecorder;
+    protected PostRepository mRepository;
+    // Key of the list of posts shown, in the repository
+    protected String mFeedKey;
+    protected PostOutbox mOutbox;
+    // Whether this screen already showed a post, after which startup is over
+    private boolean mFirstPostReported;
+    // The last load error a toast was shown for
+    private ParseException mShownError;
+    // Shows the posts waiting to be uploaded, and reloads the list once one of them was uploaded
+    private final PostOutbox.Listener mOutboxListener = new PostOutbox.Listener() {
+        @Override
+        public void onPendingPostsChanged() {
+            mAdapter.setPendingPosts(mOutbox.getPendingPosts());
+        }
+
+        @Override
+        public void onPostUploaded(String objectId) {
+            queryPosts();
+        }
+    };
 
     public PostsFragment() {
         // Required empty public constructor
@@ -88,46 +126,121 @@ public class PostsFragment extends Fragment {
         // Recycler View steps:
         // 0. Create layout for one row in the list
         // 1. Create the adapter
-        mAllPostsList = new ArrayList<>();
-        mAdapter = new PostsAdapter(getContext(), mAllPostsList);
+        mAdapter = new PostsAdapter(getContext());
         // 2. Create the data source
         // 3. Set the adapter on the Recycler View
         mPostsRecyclerView.setAdapter(mAdapter);
+        // Keep more rows for reuse than the default, so a fling does not inflate new ones
+        mPostsRecyclerView.getRecycledViewPool().setMaxRecycledViews(R.layout.item_post, MAX_RECYCLED_POSTS);
         // 4. Set the layout manager on the Recycler View
         LinearLayoutManager layoutManager = new LinearLayoutManager(getContext());
         mPostsRecyclerView.setLayoutManager(layoutManager);
 
-        queryPosts();
+        // Download and decode the images of the rows the user is scrolling towards ahead of time
+        mImagePreloader = new FeedImagePreloader(Glide.with(this), mAdapter,
+                MIN_PRELOAD_ROWS, MAX_PRELOAD_ROWS);
+        mPostsRecyclerView.addOnScrollListener(mImagePreloader);
+
+        // Time the frames drawn while the list scrolls
+        mFrameRecorder = FeedMetrics.get().frameRecorder(getContext(), "home");
+        mPostsRecyclerView.addOnScrollListener(mFrameRecorder);
+
+        // Start loading the next page of posts a few rows before the user reaches the bottom
+        mPostsRecyclerView.addOnScrollListener(new EndlessRecyclerViewScrollListener(layoutManager) {
+            @Override
+            public void onLoadMore(int totalItemsCount, RecyclerView view) {
+                loadNextPage();
+            }
+        });
+
+        mRepository = PostRepository.get(getContext());
+        // Log once per run how many bytes field projection saves on a page of the feed
+        if(BuildConfig.DEBUG && !sProjectionSavingsLogged) {
+            sProjectionSavingsLogged = true;
+            mRepository.logProjectionSavings();
+        }
+        mOutbox = PostOutbox.get(getContext());
+        mOutbox.addListener(mOutboxListener);
+        mAdapter.setPendingPosts(mOutbox.getPendingPosts());
+        // The repository shows the posts it already has right away, e.g. the ones stored on the
+        // device, and only queries the database again if they are not fresh
+        mFeedKey = PostRepository.homeFeed();
+        mRepository.observe(mFeedKey, null).observe(getViewLifecycleOwner(), new Observer<PostRepository.Feed>() {
+            @Override
+            public void onChanged(PostRepository.Feed feed) {
+                showFeed(feed);
+            }
+        });
     }
 
-    // Creates and executes a query for all the post objects in our Parse DB
-    protected void queryPosts() {
-        // Specify which class to query from Parse DB
-        ParseQuery<Post> query = ParseQuery.getQuery(Post.class);
-        query.include(Post.KEY_USER);
-        query.setLimit(20);
-        query.orderByDescending(Post.KEY_CREATED);
-        // Using findInBackground to pull all Posts from DB
-        query.findInBackground(new FindCallback<Post>() {
+    @Override
+    public void onHiddenChanged(boolean hidden) {
+        super.onHiddenChanged(hidden);
+        // The tab keeps its posts and scroll position while hidden, but stops preloading images
+        if(hidden) {
+            mImagePreloader.cancel();
+            mFrameRecorder.stop();
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        // Stop preloading images for a list that is no longer shown
+        mImagePreloader.cancel();
+        mFrameRecorder.stop();
+        mOutbox.removeListener(mOutboxListener);
+    }
+
+    // Shows the latest state of the feed
+    protected void showFeed(PostRepository.Feed feed) {
+        if(!feed.refreshing) {
+            // Now we call setRefreshing(false) to signal refresh has finished
+            mSwipeContainer.setRefreshing(false);
+        }
+        if(!feed.posts.isEmpty() || !feed.refreshing) {
+            mProgresBar.setVisibility(ProgressBar.INVISIBLE);
+        }
+        // The feed is delivered again, e.g. when the view is recreated, so every error shows once
+        if(feed.error != null && feed.error != mShownError) {
+            mShownError = feed.error;
+            Toast.makeText(getContext(), "Could not load posts, pull down to try again", Toast.LENGTH_SHORT).show();
+        }
+        // Uploaded posts have left the outbox by now and are part of the new page instead
+        mAdapter.setPendingPosts(mOutbox.getPendingPosts());
+        // Update the posts data set. The adapter works out which rows actually changed
+        mAdapter.setPosts(feed.posts);
+        if(!feed.posts.isEmpty() && !mFirstPostReported) {
+            mFirstPostReported = true;
+            reportFirstPostDrawn(feed.stored);
+        }
+    }
+
+    // Reports the time to the first post once the list is about to draw its first row. The adapter
+    // may work out the rows in the background, so frames without rows are skipped
+    private void reportFirstPostDrawn(final boolean fromDevice) {
+        mPostsRecyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
             @Override
-            public void done(List<Post> posts, ParseException e) {
-                // The ParseException will not be null if error with populating List with Post objects
-                // went wrong with query
-                if(e != null) {
-                    Log.e(TAG, "Issue with getting posts", e);
-                    return;
+            public boolean onPreDraw() {
+                if(mPostsRecyclerView.getChildCount() == 0) {
+                    return true;
                 }
-                // The ParseException will be null if List was populated successfully from query
-                for(Post post : posts) {
-                    Log.i(TAG, "Post: " + post.getDescription() + ", username: " + post.getUser().getUsername());
+                mPostsRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                if(getActivity() != null) {
+                    StartupMetrics.onFirstPostDrawn(getActivity(), fromDevice);
                 }
-                mAdapter.clear();
-                // Update the posts data set and notify the adapter of change
-                mAdapter.addAll(posts);
-                // Now we call setRefreshing(false) to signal refresh has finished
-                mSwipeContainer.setRefreshing(false);
-                mProgresBar.setVisibility(ProgressBar.INVISIBLE);
+                return true;
             }
         });
     }
+
+    // Queries the database for the most-recent page of posts again
+    protected void queryPosts() {
+        mRepository.refresh(mFeedKey);
+    }
+
+    // Queries the page of posts following the ones already shown and appends it to the feed
+    protected void loadNextPage() {
+        mRepository.loadMore(mFeedKey);
+    }
 }
\ No newline at end of file
@@ -2,7 +2,6 @@ package com.example.instagramclone.fragments;
 
 import android.content.Intent;
 import android.os.Bundle;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -10,56 +9,93 @@ import android.widget.Button;
 import android.widget.ImageView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
-import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.lifecycle.Observer;
+import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
 import com.bumptech.glide.Glide;
+import com.example.instagramclone.EndlessRecyclerViewScrollListener;
+import com.example.instagramclone.FeedImagePreloader;
+import com.example.instagramclone.LikedPostsIndex;
 import com.example.instagramclone.LoginActivity;
-import com.example.instagramclone.Post;
-import com.example.instagramclone.PostsAdapter;
+import com.example.instagramclone.PostImageRequests;
+import com.example.instagramclone.PostOutbox;
+import com.example.instagramclone.PostRepository;
+import com.example.instagramclone.PostStore;
+import com.example.instagramclone.ProfileStats;
 import com.example.instagramclone.R;
-import com.parse.FindCallback;
+import com.example.instagramclone.ThumbnailAdapter;
+import com.example.instagramclone.UserCache;
+import com.example.instagramclone.metrics.FeedMetrics;
+import com.example.instagramclone.metrics.ScrollFrameRecorder;
 import com.parse.ParseException;
-import com.parse.ParseFile;
-import com.parse.ParseQuery;
 import com.parse.ParseUser;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  *  ProfileFragment is a subclass of {@link Fragment}. It handles the
  *  functionality of the screen users go to (using the bottom navigation
  *  bar) view details about their "Instagram" profile. Specifically, this
  *  class handles the following features:
  *      - Displaying the current user's profile picture, number of posts
- *      they've submitted, and username via a Parse database query
+ *      they've submitted, and username via a Parse database query. The
+ *      number of posts is counted by the server through {@link ProfileStats}
  *      - Allowing users to logout by tapping on a button
- *      - Displaying all the posts the current user has submitted and allowing
- *      the current user to interact with their posts by setting up the
- *      Recycler View in which these posts will be shown
+ *      - Displaying all the posts the current user has submitted as a grid of
+ *      thumbnails, loading older posts page by page as the user scrolls, and
+ *      opening the details of a post when its thumbnail is tapped
  *      - Allowing users to swipe from the top of the Recycler view that
  *      displays their posts to show the most-updated details about their
  *      posts, e.g. likes, by re-querying the Parse database
+ *      - Observing the current user's posts through the {@link PostRepository},
+ *      so the posts already loaded, or stored on the device, show right away
+ *      and the database is only queried again once they are stale
  */
 public class ProfileFragment extends Fragment {
 
     public static final String TAG = ProfileFragment.class.getSimpleName();
+    // Number of rows whose images are preloaded when scrolling slowly and when flinging
+    private static final int MIN_PRELOAD_ROWS = 2;
+    private static final int MAX_PRELOAD_ROWS = 6;
+    // Number of thumbnails in each row of the grid of posts
+    private static final int GRID_COLUMNS = 3;
+    // How many thumbnails scrolled out of the grid are kept for reuse
+    private static final int MAX_RECYCLED_THUMBNAILS = 24;
 
     private RecyclerView mPostsRecyclerView;
     protected SwipeRefreshLayout mSwipeContainer;
-    protected PostsAdapter mAdapter;
-    protected List<Post> mAllPostsList;
+    protected ThumbnailAdapter mAdapter;
+    protected FeedImagePreloader mImagePreloader;
+    protected ScrollFrameRecorder mFrameRecorder;
+    protected PostRepository mRepository;
+    // Key of the list of posts shown, in the repository
+    protected String mFeedKey;
+    protected PostOutbox mOutbox;
+    // Shows the posts waiting to be uploaded, and reloads the list once one of them was uploaded
+    private final PostOutbox.Listener mOutboxListener = new PostOutbox.Listener() {
+        @Override
+        public void onPendingPostsChanged() {
+            mAdapter.setPendingPosts(mOutbox.getPendingPosts());
+        }
+
+        @Override
+        public void onPostUploaded(String objectId) {
+            queryPosts();
+            loadStats(true);
+        }
+    };
     private ImageView mProfileImageView;
     private TextView mUsernameTextView;
     private Button mLogoutButton;
     private TextView mPostsCountTextView;
     private ProgressBar mProgressBar;
+    // The last load error a toast was shown for
+    private ParseException mShownError;
 
     // Required empty constructor
     public ProfileFragment() {}
@@ -94,6 +130,7 @@ public class ProfileFragment extends Fragment {
                 // Make sure you call swipeContainer.setRefreshing(false)
                 // once the network request has completed successfully.
                 queryPosts();
+                loadStats(true);
             }
         });
         // Configure the refreshing colors
@@ -103,26 +140,62 @@ public class ProfileFragment extends Fragment {
                 android.R.color.holo_red_light);
 
         // Recycler View steps:
-        // 0. Create layout for one row in the list
-        // 1. Create the adapter
-        mAllPostsList = new ArrayList<>();
-        mAdapter = new PostsAdapter(getContext(), mAllPostsList);
+        // 0. Create layout for one cell in the grid
+        // 1. Create the adapter, with square cells that split the width of the grid evenly
+        int gridWidth = getResources().getDisplayMetrics().widthPixels
+                - mPostsRecyclerView.getPaddingLeft() - mPostsRecyclerView.getPaddingRight();
+        mAdapter = new ThumbnailAdapter(getContext(), gridWidth / GRID_COLUMNS);
         // 2. Create the data source
         // 3. Set the adapter on the Recycler View
         mPostsRecyclerView.setAdapter(mAdapter);
+        // A grid row holds several thumbnails, so keep more of them for reuse than the default
+        mPostsRecyclerView.getRecycledViewPool().setMaxRecycledViews(R.layout.item_thumbnail, MAX_RECYCLED_THUMBNAILS);
         // 4. Set the layout manager on the Recycler View
-        LinearLayoutManager layoutManager = new LinearLayoutManager(getContext());
+        GridLayoutManager layoutManager = new GridLayoutManager(getContext(), GRID_COLUMNS);
         mPostsRecyclerView.setLayoutManager(layoutManager);
 
-        queryPosts();
+        // Download and decode the thumbnails of the rows the user is scrolling towards ahead of time.
+        // The preloader counts cells, so the number of rows is multiplied by the cells per row
+        mImagePreloader = new FeedImagePreloader(Glide.with(this), mAdapter,
+                MIN_PRELOAD_ROWS * GRID_COLUMNS, MAX_PRELOAD_ROWS * GRID_COLUMNS);
+        mPostsRecyclerView.addOnScrollListener(mImagePreloader);
+
+        // Time the frames drawn while the list scrolls
+        mFrameRecorder = FeedMetrics.get().frameRecorder(getContext(), "profile");
+        mPostsRecyclerView.addOnScrollListener(mFrameRecorder);
+
+        // Start loading the next page of posts a few rows before the user reaches the bottom
+        mPostsRecyclerView.addOnScrollListener(new EndlessRecyclerViewScrollListener(layoutManager,
+                MIN_PRELOAD_ROWS * GRID_COLUMNS) {
+            @Override
+            public void onLoadMore(int totalItemsCount, RecyclerView view) {
+                loadNextPage();
+            }
+        });
+
+        mOutbox = PostOutbox.get(getContext());
+        mOutbox.addListener(mOutboxListener);
+        mAdapter.setPendingPosts(mOutbox.getPendingPosts());
+        // The repository shows the posts it already has right away, e.g. the ones stored on the
+        // device, and only queries the database again if they are not fresh
+        mRepository = PostRepository.get(getContext());
+        mFeedKey = PostRepository.userFeed(ParseUser.getCurrentUser());
+        mRepository.observe(mFeedKey, ParseUser.getCurrentUser()).observe(getViewLifecycleOwner(), new Observer<PostRepository.Feed>() {
+            @Override
+            public void onChanged(PostRepository.Feed feed) {
+                showFeed(feed);
+            }
+        });
+
+        loadStats(false);
 
-        String username = ParseUser.getCurrentUser().getUsername();
-        mUsernameTextView.setText(username);
+        // The current user goes through the user cache like the creators of the posts below
+        UserCache.Author author = UserCache.get().resolve(ParseUser.getCurrentUser());
+        mUsernameTextView.setText(author.username);
 
-        ParseFile profileImage = ParseUser.getCurrentUser().getParseFile(Post.KEY_PROFILE_IMAGE);
-        if(profileImage != null) {
+        if(author.profileImageUrl != null) {
             mProfileImageView.setVisibility(View.VISIBLE);
-            Glide.with(getContext()).load(profileImage.getUrl()).circleCrop().into(mProfileImageView);
+            PostImageRequests.profileImage(Glide.with(getContext()), author.profileImageUrl).into(mProfileImageView);
         } else {
             mProfileImageView.setVisibility(View.GONE);
         }
@@ -131,6 +204,12 @@ public class ProfileFragment extends Fragment {
             @Override
             public void onClick(View view) {
                 ParseUser.logOut();
+                LikedPostsIndex.get().clear();
+                PostStore.get(getContext()).clear();
+                PostRepository.get(getContext()).clear();
+                PostOutbox.get(getContext()).clear();
+                UserCache.get().clear();
+                ProfileStats.get(getContext()).clear();
                 Intent intent = new Intent(getContext(), LoginActivity.class);
                 startActivity(intent);
                 getActivity().finish();
@@ -138,39 +217,66 @@ public class ProfileFragment extends Fragment {
         });
     }
 
-    protected void queryPosts() {
-        // Specify which class to query from Parse DB
-        ParseQuery<Post> query = ParseQuery.getQuery(Post.class);
-        query.include(Post.KEY_USER);
-        query.whereEqualTo(Post.KEY_USER, ParseUser.getCurrentUser());
-        query.setLimit(20);
-        query.orderByDescending(Post.KEY_CREATED);
-        // Using findInBackground to pull all Posts from DB
-        query.findInBackground(new FindCallback<Post>() {
+    @Override
+    public void onHiddenChanged(boolean hidden) {
+        super.onHiddenChanged(hidden);
+        // The tab keeps its posts and scroll position while hidden, but stops preloading images
+        if(hidden) {
+            mImagePreloader.cancel();
+            mFrameRecorder.stop();
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        // Stop preloading images for a list that is no longer shown
+        mImagePreloader.cancel();
+        mFrameRecorder.stop();
+        mOutbox.removeListener(mOutboxListener);
+    }
+
+    // Shows the number of posts of the current user, cached or counted by the server. Only a
+    // single page of posts is ever downloaded for the profile
+    protected void loadStats(boolean forceRefresh) {
+        ProfileStats.get(getContext()).load(ParseUser.getCurrentUser(), forceRefresh, new ProfileStats.Callback() {
             @Override
-            public void done(List<Post> posts, ParseException e) {
-                // The ParseException will not be null if error with populating List with Post objects
-                // went wrong with query
-                if(e != null) {
-                    Log.e(TAG, "Issue with getting posts", e);
+            public void onStats(int postCount) {
+                if(getView() == null) {
                     return;
                 }
-                // The ParseException will be null if List was populated successfully from query
-                for(Post post : posts) {
-                    Log.i(TAG, "Post: " + post.getDescription() + ", username: " + post.getUser().getUsername());
-                }
-                mAdapter.clear();
-                // Update the posts data set and notify the adapter of change
-                mAdapter.addAll(posts);
-                // Now we call setRefreshing(false) to signal refresh has finished
-                mSwipeContainer.setRefreshing(false);
-
-                int postsCount = posts.size();
-                String stringPostsCount = Integer.toString(postsCount);
-                mPostsCountTextView.setText(stringPostsCount);
-
-                mProgressBar.setVisibility(ProgressBar.INVISIBLE);
+                mPostsCountTextView.setText(Integer.toString(postCount));
             }
         });
     }
+
+    // Shows the latest state of the current user's posts
+    protected void showFeed(PostRepository.Feed feed) {
+        if(!feed.refreshing) {
+            // Now we call setRefreshing(false) to signal refresh has finished
+            mSwipeContainer.setRefreshing(false);
+        }
+        if(!feed.posts.isEmpty() || !feed.refreshing) {
+            mProgressBar.setVisibility(ProgressBar.INVISIBLE);
+        }
+        // The feed is delivered again, e.g. when the view is recreated, so every error shows once
+        if(feed.error != null && feed.error != mShownError) {
+            mShownError = feed.error;
+            Toast.makeText(getContext(), "Could not load posts, pull down to try again", Toast.LENGTH_SHORT).show();
+        }
+        // Uploaded posts have left the outbox by now and are part of the new page instead
+        mAdapter.setPendingPosts(mOutbox.getPendingPosts());
+        // Update the posts data set. The adapter works out which cells actually changed
+        mAdapter.setPosts(feed.posts);
+    }
+
+    // Queries the database for the most-recent page of the current user's posts again
+    protected void queryPosts() {
+        mRepository.refresh(mFeedKey);
+    }
+
+    // Queries the page of posts following the ones already shown and appends it to the grid
+    protected void loadNextPage() {
+        mRepository.loadMore(mFeedKey);
+    }
 }
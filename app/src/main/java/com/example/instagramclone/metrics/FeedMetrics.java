@@ -0,0 +1,139 @@
+package com.example.instagramclone.metrics;
+
+import android.content.Context;
+import android.os.Build;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *  FeedMetrics collects how the lists of posts perform on the device the app
+ *  runs on, in release builds too. It is cheap enough to always be on.
+ *  Specifically, this class handles the following features:
+ *      - Keeping a {@link LatencyHistogram} per step of showing a row, i.e.
+ *      creating its view holder, binding it and loading its image
+ *      - Keeping a {@link ScrollFrameRecorder} per list, timing the frames
+ *      drawn while it scrolls
+ *      - Summarizing everything for the debug overlay
+ *      - Exporting everything as a JSON file that can be shared
+ */
+public class FeedMetrics {
+
+    public static final String CREATE_VIEW_HOLDER = "create_view_holder";
+    public static final String BIND_VIEW_HOLDER = "bind_view_holder";
+    public static final String IMAGE_LOAD = "image_load";
+
+    // Directory in the app's external files that exported metrics are written to
+    private static final String EXPORT_DIRECTORY = "Metrics";
+
+    private static FeedMetrics sInstance;
+
+    private final Map<String, LatencyHistogram> mHistograms = new LinkedHashMap<>();
+    private final Map<String, ScrollFrameRecorder> mFrameRecorders = new LinkedHashMap<>();
+
+    private FeedMetrics() {
+        histogram(CREATE_VIEW_HOLDER);
+        histogram(BIND_VIEW_HOLDER);
+        histogram(IMAGE_LOAD);
+    }
+
+    public static synchronized FeedMetrics get() {
+        if(sInstance == null) {
+            sInstance = new FeedMetrics();
+        }
+        return sInstance;
+    }
+
+    // The histogram with the name, created the first time it is asked for
+    public LatencyHistogram histogram(String name) {
+        return histogram(name, LatencyHistogram.DEFAULT_FIRST_BOUND_NANOS);
+    }
+
+    // The histogram with the name, created with the first bucket bound the first time it is asked for
+    public synchronized LatencyHistogram histogram(String name, long firstBoundNanos) {
+        LatencyHistogram histogram = mHistograms.get(name);
+        if(histogram == null) {
+            histogram = new LatencyHistogram(name, firstBoundNanos);
+            mHistograms.put(name, histogram);
+        }
+        return histogram;
+    }
+
+    // The frame recorder of the list with the name, to add to the list as a scroll listener
+    public synchronized ScrollFrameRecorder frameRecorder(Context context, String listName) {
+        ScrollFrameRecorder recorder = mFrameRecorders.get(listName);
+        if(recorder == null) {
+            recorder = new ScrollFrameRecorder(context.getApplicationContext(), listName);
+            mFrameRecorders.put(listName, recorder);
+        }
+        return recorder;
+    }
+
+    // Summary of every list and histogram, one per line, for the debug overlay
+    public synchronized List<String> summary() {
+        List<String> lines = new ArrayList<>();
+        for(ScrollFrameRecorder recorder : mFrameRecorders.values()) {
+            lines.add(recorder.summary());
+        }
+        for(LatencyHistogram histogram : mHistograms.values()) {
+            lines.add(histogram.summary());
+        }
+        return lines;
+    }
+
+    public synchronized JSONObject toJson() throws JSONException {
+        JSONObject frames = new JSONObject();
+        for(Map.Entry<String, ScrollFrameRecorder> entry : mFrameRecorders.entrySet()) {
+            frames.put(entry.getKey(), entry.getValue().toJson());
+        }
+        JSONObject latencies = new JSONObject();
+        for(Map.Entry<String, LatencyHistogram> entry : mHistograms.entrySet()) {
+            latencies.put(entry.getKey(), entry.getValue().toJson());
+        }
+        return new JSONObject()
+                .put("device", Build.MANUFACTURER + " " + Build.MODEL)
+                .put("sdk", Build.VERSION.SDK_INT)
+                .put("exported_at", System.currentTimeMillis())
+                .put("scroll_frames", frames)
+                .put("latencies", latencies);
+    }
+
+    // Writes the metrics to a new JSON file in the app's external files, where the file provider
+    // can share it from
+    public File export(Context context) throws IOException, JSONException {
+        File directory = new File(context.getExternalFilesDir(null), EXPORT_DIRECTORY);
+        if(!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        File file = new File(directory, "feed_metrics_" + System.currentTimeMillis() + ".json");
+        String json = toJson().toString(2);
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8"));
+        try {
+            writer.write(json);
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    // Starts counting from scratch, e.g. before measuring a single scroll
+    public synchronized void reset() {
+        for(ScrollFrameRecorder recorder : mFrameRecorders.values()) {
+            recorder.reset();
+        }
+        for(LatencyHistogram histogram : mHistograms.values()) {
+            histogram.reset();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.instagramclone.metrics;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Locale;
+
+/**
+ *  LatencyHistogram counts how long an operation took, e.g. binding a row,
+ *  in buckets whose bounds double from a quarter of a millisecond up to a
+ *  second, or from a larger first bound for slower operations such as a cold
+ *  start. Recording a sample is a few comparisons and an increment, so it
+ *  can stay on in release builds. Specifically, this class handles the
+ *  following features:
+ *      - Recording samples from any thread without allocating
+ *      - Estimating percentiles, e.g. the 95th, from the buckets
+ *      - Keeping the count, mean and maximum exactly
+ */
+public class LatencyHistogram {
+
+    // Upper bound of the first bucket for operations that take well under a second
+    public static final long DEFAULT_FIRST_BOUND_NANOS = 250 * 1000L;
+    // Every bound doubles the one before, so the last bound is 4096 times the first
+    private static final int BOUNDED_BUCKETS = 13;
+
+    private final String mName;
+    // Upper bounds of the buckets in nanoseconds. A last bucket holds everything slower than that
+    private final long[] mBoundsNanos = new long[BOUNDED_BUCKETS];
+    private final long[] mCounts = new long[BOUNDED_BUCKETS + 1];
+    private long mCount;
+    private long mTotalNanos;
+    private long mMaxNanos;
+
+    public LatencyHistogram(String name) {
+        this(name, DEFAULT_FIRST_BOUND_NANOS);
+    }
+
+    public LatencyHistogram(String name, long firstBoundNanos) {
+        this.mName = name;
+        long bound = firstBoundNanos;
+        for(int i = 0; i < mBoundsNanos.length; i++) {
+            mBoundsNanos[i] = bound;
+            bound *= 2;
+        }
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public synchronized void record(long nanos) {
+        int bucket = 0;
+        while(bucket < mBoundsNanos.length && nanos > mBoundsNanos[bucket]) {
+            bucket++;
+        }
+        mCounts[bucket]++;
+        mCount++;
+        mTotalNanos += nanos;
+        mMaxNanos = Math.max(mMaxNanos, nanos);
+    }
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    public synchronized double getMeanMillis() {
+        return (mCount == 0) ? 0 : mTotalNanos / (double) mCount / 1e6;
+    }
+
+    public synchronized double getMaxMillis() {
+        return mMaxNanos / 1e6;
+    }
+
+    // The upper bound of the bucket the percentile falls in, e.g. 0.95 for the 95th, in milliseconds
+    public synchronized double getPercentileMillis(double percentile) {
+        if(mCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile * mCount);
+        long seen = 0;
+        for(int i = 0; i < mBoundsNanos.length; i++) {
+            seen += mCounts[i];
+            if(seen >= rank) {
+                return Math.min(mBoundsNanos[i], mMaxNanos) / 1e6;
+            }
+        }
+        return mMaxNanos / 1e6;
+    }
+
+    public synchronized void reset() {
+        for(int i = 0; i < mCounts.length; i++) {
+            mCounts[i] = 0;
+        }
+        mCount = 0;
+        mTotalNanos = 0;
+        mMaxNanos = 0;
+    }
+
+    public synchronized JSONObject toJson() throws JSONException {
+        JSONArray buckets = new JSONArray();
+        for(int i = 0; i < mCounts.length; i++) {
+            JSONObject bucket = new JSONObject();
+            // The last bucket has no upper bound
+            if(i < mBoundsNanos.length) {
+                bucket.put("le_ms", mBoundsNanos[i] / 1e6);
+            }
+            bucket.put("count", mCounts[i]);
+            buckets.put(bucket);
+        }
+        return new JSONObject()
+                .put("count", mCount)
+                .put("mean_ms", getMeanMillis())
+                .put("p50_ms", getPercentileMillis(0.5))
+                .put("p95_ms", getPercentileMillis(0.95))
+                .put("p99_ms", getPercentileMillis(0.99))
+                .put("max_ms", getMaxMillis())
+                .put("buckets", buckets);
+    }
+
+    // One line summary for the debug overlay
+    public synchronized String summary() {
+        return String.format(Locale.US, "%s n=%d p50=%.1f p95=%.1f max=%.1fms", mName, mCount,
+                getPercentileMillis(0.5), getPercentileMillis(0.95), getMaxMillis());
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.instagramclone.metrics;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.net.Uri;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.core.content.FileProvider;
+
+import java.io.File;
+
+/**
+ *  MetricsOverlay shows the {@link FeedMetrics} in a small panel on top of an
+ *  activity, for debug builds. Specifically, this class handles the
+ *  following features:
+ *      - Refreshing the panel once a second while it is attached
+ *      - Exporting the metrics to a JSON file and sharing it when the panel
+ *      is tapped
+ *      - Resetting the metrics when the panel is long pressed, e.g. before
+ *      measuring a single scroll
+ */
+public class MetricsOverlay {
+
+    public static final String TAG = MetricsOverlay.class.getSimpleName();
+
+    private static final long REFRESH_MILLIS = 1000;
+    // Keeps the panel clear of the bottom navigation bar
+    private static final int BOTTOM_MARGIN_DP = 64;
+
+    private MetricsOverlay() {}
+
+    // Adds the panel to the content of the activity
+    public static void attach(final Activity activity) {
+        final TextView panel = new TextView(activity);
+        panel.setTypeface(Typeface.MONOSPACE);
+        panel.setTextSize(TypedValue.COMPLEX_UNIT_SP, 9);
+        panel.setTextColor(Color.WHITE);
+        panel.setBackgroundColor(Color.argb(160, 0, 0, 0));
+        int padding = dp(activity, 4);
+        panel.setPadding(padding, padding, padding, padding);
+
+        FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT, Gravity.BOTTOM | Gravity.START);
+        params.bottomMargin = dp(activity, BOTTOM_MARGIN_DP);
+        ((FrameLayout) activity.findViewById(android.R.id.content)).addView(panel, params);
+
+        final Runnable refresh = new Runnable() {
+            @Override
+            public void run() {
+                StringBuilder text = new StringBuilder();
+                for(String line : FeedMetrics.get().summary()) {
+                    if(text.length() > 0) {
+                        text.append('\n');
+                    }
+                    text.append(line);
+                }
+                panel.setText(text);
+                panel.postDelayed(this, REFRESH_MILLIS);
+            }
+        };
+        panel.addOnAttachStateChangeListener(new View.OnAttachStateChangeListener() {
+            @Override
+            public void onViewAttachedToWindow(View view) {
+                view.post(refresh);
+            }
+
+            @Override
+            public void onViewDetachedFromWindow(View view) {
+                view.removeCallbacks(refresh);
+            }
+        });
+        panel.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                share(activity);
+            }
+        });
+        panel.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View view) {
+                FeedMetrics.get().reset();
+                Toast.makeText(activity, "Metrics reset", Toast.LENGTH_SHORT).show();
+                return true;
+            }
+        });
+    }
+
+    // Exports the metrics and lets the user pick where to send the file
+    private static void share(Activity activity) {
+        File file;
+        try {
+            file = FeedMetrics.get().export(activity);
+        } catch(Exception e) {
+            Log.e(TAG, "Issue with exporting metrics", e);
+            Toast.makeText(activity, "Couldn't export metrics", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        Uri uri = FileProvider.getUriForFile(activity, "fileprovider", file);
+        Intent intent = new Intent(Intent.ACTION_SEND);
+        intent.setType("application/json");
+        intent.putExtra(Intent.EXTRA_STREAM, uri);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        activity.startActivity(Intent.createChooser(intent, "Export feed metrics"));
+    }
+
+    private static int dp(Activity activity, int dp) {
+        return Math.round(dp * activity.getResources().getDisplayMetrics().density);
+    }
+}
@@ -0,0 +1,375 @@
+package com.example.instagramclone.metrics;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.instagramclone.BuildConfig;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ *  NetworkMetricsInterceptor measures every request Parse sends to the server,
+ *  through two OkHttp interceptors added to the client Parse uses. It sorts
+ *  the requests by what they do, e.g. "Post find", "Post save", "file upload"
+ *  or "login", and keeps the numbers of each in memory for the diagnostics
+ *  screen. Specifically, this class handles the following features:
+ *      - Timing each request until its response headers arrive, i.e. the
+ *      time spent on the network and on the server
+ *      - Timing how long the response body takes to arrive after that, and
+ *      counting its bytes as they arrive over the network, i.e. before they
+ *      are decompressed, which is the cost of the payload itself
+ *      - Counting the bytes of each request body
+ *      - Counting the responses by status code, the failed requests, and the
+ *      retries, i.e. the attempts OkHttp made on top of the first one, e.g.
+ *      after a dropped connection or for a redirect, and the requests the
+ *      Parse SDK sent again after one failed. The SDK retries a command with
+ *      a new call, so a request that matches one that failed shortly before
+ *      is counted as a retry of it, as well as a request of its own
+ *      - Logging every request in debug builds
+ */
+public class NetworkMetricsInterceptor {
+
+    public static final String TAG = NetworkMetricsInterceptor.class.getSimpleName();
+
+    // Operations on a class of Parse objects, see endpointOf
+    public static final String FIND = "find";
+    public static final String COUNT = "count";
+    public static final String GET = "get";
+    public static final String SAVE = "save";
+    public static final String DELETE = "delete";
+
+    // The Parse SDK gives up retrying a command after about 15 seconds, so a request sent again
+    // within this time of failing is taken to be a retry
+    private static final long RETRY_WINDOW_NANOS = 30 * 1000000000L;
+    // Bodies up to this size are compared when matching a request to a failed one. Larger ones, i.e.
+    // file uploads, are matched by their size so they are not read a second time
+    private static final long MAX_COMPARED_BODY_BYTES = 16 * 1024;
+
+    /**
+     *  Everything measured about the requests of one endpoint
+     */
+    public static class EndpointStats {
+        public final String endpoint;
+        public final LatencyHistogram latency;
+        public final LatencyHistogram read;
+        private long mRequests;
+        private long mFailures;
+        private long mRetries;
+        private long mRequestBytes;
+        private long mResponseBytes;
+        private final Map<Integer, Long> mStatuses = new TreeMap<>();
+
+        EndpointStats(String endpoint) {
+            this.endpoint = endpoint;
+            this.latency = new LatencyHistogram(endpoint + " latency");
+            this.read = new LatencyHistogram(endpoint + " read");
+        }
+
+        // Summary of the endpoint for the diagnostics screen
+        public synchronized String summary() {
+            long requests = Math.max(mRequests, 1);
+            return String.format(Locale.US, "%s\n  n=%d failed=%d retries=%d statuses=%s\n"
+                            + "  latency p50=%.0f p95=%.0f max=%.0fms, read p95=%.0fms\n"
+                            + "  avg request=%dB response=%dB",
+                    endpoint, mRequests, mFailures, mRetries, mStatuses,
+                    latency.getPercentileMillis(0.5), latency.getPercentileMillis(0.95), latency.getMaxMillis(),
+                    read.getPercentileMillis(0.95), mRequestBytes / requests, mResponseBytes / requests);
+        }
+
+        synchronized void onRequestDone(int status, long latencyNanos, long requestBytes, int attempts,
+                                        boolean resent) {
+            mRequests++;
+            if(status < 200 || status >= 400) {
+                mFailures++;
+            }
+            Long statusCount = mStatuses.get(status);
+            mStatuses.put(status, (statusCount == null) ? 1 : statusCount + 1);
+            mRetries += Math.max(attempts - 1, 0) + (resent ? 1 : 0);
+            mRequestBytes += requestBytes;
+            latency.record(latencyNanos);
+        }
+
+        synchronized void onRequestFailed(long requestBytes, int attempts, boolean resent) {
+            mRequests++;
+            mFailures++;
+            mRetries += Math.max(attempts - 1, 0) + (resent ? 1 : 0);
+            mRequestBytes += requestBytes;
+        }
+
+        synchronized void onResponseRead(long bytes, long readNanos) {
+            mResponseBytes += bytes;
+            read.record(readNanos);
+        }
+
+        synchronized void reset() {
+            mRequests = 0;
+            mFailures = 0;
+            mRetries = 0;
+            mRequestBytes = 0;
+            mResponseBytes = 0;
+            mStatuses.clear();
+            latency.reset();
+            read.reset();
+        }
+    }
+
+    // The request going through the interceptors on this thread. OkHttp runs the application and
+    // network interceptors of a call on the thread that executes it, so this links the attempts
+    // the network interceptor sees to the request the application interceptor saw
+    private static class CallState {
+        final EndpointStats stats;
+        int attempts;
+
+        CallState(EndpointStats stats) {
+            this.stats = stats;
+        }
+    }
+
+    private static NetworkMetricsInterceptor sInstance;
+
+    private final Map<String, EndpointStats> mEndpoints = new TreeMap<>();
+    private final ThreadLocal<CallState> mCallState = new ThreadLocal<>();
+    // When requests failed, by their signature, so the same request sent again can be told apart
+    private final Map<String, Long> mFailedAt = new HashMap<>();
+
+    // Sees every request once, before OkHttp retries it or follows redirects
+    private final Interceptor mApplicationInterceptor = new Interceptor() {
+        @NonNull
+        @Override
+        public Response intercept(@NonNull Chain chain) throws IOException {
+            Request request = chain.request();
+            String endpoint = classify(request.method(), request.url());
+            CallState state = new CallState(stats(endpoint));
+            long requestBytes = requestBytesOf(request);
+            String signature = signatureOf(request, requestBytes);
+            long start = System.nanoTime();
+            boolean resent = onRequestSent(signature, start);
+            mCallState.set(state);
+            Response response;
+            try {
+                response = chain.proceed(request);
+            } catch(IOException e) {
+                onRequestFailed(signature);
+                state.stats.onRequestFailed(requestBytes, state.attempts, resent);
+                if(BuildConfig.DEBUG) {
+                    Log.d(TAG, endpoint + " failed after " + state.attempts + " attempts: " + e);
+                }
+                throw e;
+            } finally {
+                mCallState.remove();
+            }
+            long latencyNanos = System.nanoTime() - start;
+            // Parse retries the commands that failed with a server error too
+            if(response.code() >= 500) {
+                onRequestFailed(signature);
+            }
+            state.stats.onRequestDone(response.code(), latencyNanos, requestBytes, state.attempts, resent);
+            if(BuildConfig.DEBUG) {
+                Log.d(TAG, endpoint + ": " + response.code() + " in " + latencyNanos / 1000000 + "ms");
+            }
+            return response;
+        }
+    };
+
+    // Sees every attempt that goes over the network, and the body as it arrives
+    private final Interceptor mNetworkInterceptor = new Interceptor() {
+        @NonNull
+        @Override
+        public Response intercept(@NonNull Chain chain) throws IOException {
+            Request request = chain.request();
+            CallState state = mCallState.get();
+            final EndpointStats stats = (state != null) ? state.stats : stats(classify(request.method(), request.url()));
+            if(state != null) {
+                state.attempts++;
+            }
+            Response response = chain.proceed(request);
+            final ResponseBody body = response.body();
+            if(body == null) {
+                return response;
+            }
+            final long headersAt = System.nanoTime();
+            // Count the bytes while Parse reads the body, so it is not buffered a second time
+            BufferedSource countingSource = Okio.buffer(new ForwardingSource(body.source()) {
+                private long mBytesRead;
+                private boolean mRecorded;
+
+                @Override
+                public long read(@NonNull Buffer sink, long byteCount) throws IOException {
+                    long read = super.read(sink, byteCount);
+                    if(read == -1) {
+                        record();
+                    } else {
+                        mBytesRead += read;
+                    }
+                    return read;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    record();
+                    super.close();
+                }
+
+                private void record() {
+                    if(!mRecorded) {
+                        mRecorded = true;
+                        stats.onResponseRead(mBytesRead, System.nanoTime() - headersAt);
+                    }
+                }
+            });
+            return response.newBuilder()
+                    .body(ResponseBody.create(body.contentType(), body.contentLength(), countingSource))
+                    .build();
+        }
+    };
+
+    private NetworkMetricsInterceptor() {}
+
+    public static synchronized NetworkMetricsInterceptor get() {
+        if(sInstance == null) {
+            sInstance = new NetworkMetricsInterceptor();
+        }
+        return sInstance;
+    }
+
+    // Name of an operation on a class of Parse objects, e.g. "Post find"
+    public static String endpointOf(String className, String operation) {
+        return className + " " + operation;
+    }
+
+    // Add with OkHttpClient.Builder.addInterceptor
+    public Interceptor applicationInterceptor() {
+        return mApplicationInterceptor;
+    }
+
+    // Add with OkHttpClient.Builder.addNetworkInterceptor
+    public Interceptor networkInterceptor() {
+        return mNetworkInterceptor;
+    }
+
+    // Every endpoint a request was sent to, in alphabetical order
+    public synchronized List<EndpointStats> getEndpoints() {
+        return new ArrayList<>(mEndpoints.values());
+    }
+
+    public synchronized void reset() {
+        for(EndpointStats stats : mEndpoints.values()) {
+            stats.reset();
+        }
+    }
+
+    // Whether the request is the same as one that failed within the retry window, which it then
+    // takes the place of
+    private synchronized boolean onRequestSent(String signature, long nowNanos) {
+        Iterator<Long> failedAt = mFailedAt.values().iterator();
+        while(failedAt.hasNext()) {
+            if(nowNanos - failedAt.next() > RETRY_WINDOW_NANOS) {
+                failedAt.remove();
+            }
+        }
+        return mFailedAt.remove(signature) != null;
+    }
+
+    private synchronized void onRequestFailed(String signature) {
+        mFailedAt.put(signature, System.nanoTime());
+    }
+
+    private synchronized EndpointStats stats(String endpoint) {
+        EndpointStats stats = mEndpoints.get(endpoint);
+        if(stats == null) {
+            stats = new EndpointStats(endpoint);
+            mEndpoints.put(endpoint, stats);
+        }
+        return stats;
+    }
+
+    // Sorts a request to the Parse REST API by what it does, leaving objectIds and file names out so
+    // requests for different objects of a class end up together
+    static String classify(String method, HttpUrl url) {
+        List<String> segments = url.pathSegments();
+        // The server is mounted under /parse/
+        int start = segments.indexOf("parse") + 1;
+        String resource = (segments.size() > start) ? segments.get(start) : "";
+        boolean single = segments.size() > start + 2;
+        switch(resource) {
+            case "classes":
+                String className = (segments.size() > start + 1) ? segments.get(start + 1) : "";
+                switch(method) {
+                    case "GET":
+                        if(single) {
+                            return endpointOf(className, GET);
+                        }
+                        return endpointOf(className, (url.queryParameter("count") != null) ? COUNT : FIND);
+                    case "DELETE":
+                        return endpointOf(className, DELETE);
+                    default:
+                        return endpointOf(className, SAVE);
+                }
+            case "files":
+                return "POST".equals(method) ? "file upload" : "file " + method;
+            case "login":
+                return "login";
+            case "logout":
+                return "logout";
+            case "users":
+                if(segments.size() == start + 1 && "POST".equals(method)) {
+                    return "signup";
+                }
+                return "users " + method;
+            case "batch":
+                return "batch save";
+            default:
+                return method + " " + resource;
+        }
+    }
+
+    // The method, URL and body of the request, which stay the same when Parse sends it again
+    private static String signatureOf(Request request, long requestBytes) {
+        String signature = request.method() + " " + request.url();
+        RequestBody body = request.body();
+        if(body == null) {
+            return signature;
+        }
+        if(requestBytes > MAX_COMPARED_BODY_BYTES) {
+            return signature + " " + requestBytes + "B";
+        }
+        try {
+            Buffer buffer = new Buffer();
+            body.writeTo(buffer);
+            return signature + " " + buffer.readByteString().md5().hex();
+        } catch(IOException e) {
+            return signature + " " + requestBytes + "B";
+        }
+    }
+
+    private static long requestBytesOf(Request request) {
+        RequestBody body = request.body();
+        if(body == null) {
+            return 0;
+        }
+        try {
+            return Math.max(body.contentLength(), 0);
+        } catch(IOException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.instagramclone.metrics;
+
+import android.content.Context;
+import android.view.Choreographer;
+import android.view.WindowManager;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Locale;
+
+/**
+ *  ScrollFrameRecorder is a subclass of {@link RecyclerView.OnScrollListener}.
+ *  It times every frame the device draws while a list is scrolling, through
+ *  the {@link Choreographer}, so it works on every API level the app runs on.
+ *  Specifically, this class handles the following features:
+ *      - Only listening to frames while the list scrolls, so an idle list
+ *      costs nothing
+ *      - Recording the time between frames in a {@link LatencyHistogram}
+ *      - Counting janky frames, i.e. ones that took more than one and a half
+ *      refresh periods, and the number of refresh periods that were missed
+ */
+public class ScrollFrameRecorder extends RecyclerView.OnScrollListener implements Choreographer.FrameCallback {
+
+    // Frames taking longer than this many refresh periods count as janky
+    private static final double JANK_FACTOR = 1.5;
+
+    private final String mName;
+    private final long mFrameIntervalNanos;
+    private final LatencyHistogram mFrameTimes;
+
+    private boolean mRunning;
+    // Time of the previous frame of the current scroll, or 0 before the first one
+    private long mLastFrameNanos;
+    private long mFrames;
+    private long mJankyFrames;
+    private long mMissedFrames;
+
+    ScrollFrameRecorder(Context context, String name) {
+        this.mName = name;
+        WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        float refreshRate = windowManager.getDefaultDisplay().getRefreshRate();
+        this.mFrameIntervalNanos = (long) (1e9 / ((refreshRate > 0) ? refreshRate : 60f));
+        this.mFrameTimes = new LatencyHistogram(name + "_frame");
+    }
+
+    @Override
+    public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) {
+        if(newState == RecyclerView.SCROLL_STATE_IDLE) {
+            stop();
+        } else if(!mRunning) {
+            mRunning = true;
+            mLastFrameNanos = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if(!mRunning) {
+            return;
+        }
+        if(mLastFrameNanos != 0) {
+            long frameNanos = frameTimeNanos - mLastFrameNanos;
+            synchronized(this) {
+                mFrameTimes.record(frameNanos);
+                mFrames++;
+                if(frameNanos > JANK_FACTOR * mFrameIntervalNanos) {
+                    mJankyFrames++;
+                    mMissedFrames += Math.round(frameNanos / (double) mFrameIntervalNanos) - 1;
+                }
+            }
+        }
+        mLastFrameNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    // Stops listening to frames, e.g. when the list is no longer shown
+    public void stop() {
+        mRunning = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    public synchronized void reset() {
+        mFrameTimes.reset();
+        mFrames = 0;
+        mJankyFrames = 0;
+        mMissedFrames = 0;
+    }
+
+    public synchronized JSONObject toJson() throws JSONException {
+        return new JSONObject()
+                .put("frame_interval_ms", mFrameIntervalNanos / 1e6)
+                .put("frames", mFrames)
+                .put("janky_frames", mJankyFrames)
+                .put("missed_frames", mMissedFrames)
+                .put("frame_times", mFrameTimes.toJson());
+    }
+
+    // One line summary for the debug overlay
+    public synchronized String summary() {
+        double jankPercent = (mFrames == 0) ? 0 : 100.0 * mJankyFrames / mFrames;
+        return String.format(Locale.US, "%s frames=%d jank=%.1f%% missed=%d p95=%.1fms", mName, mFrames,
+                jankPercent, mMissedFrames, mFrameTimes.getPercentileMillis(0.95));
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.instagramclone.metrics;
+
+import android.app.Activity;
+import android.app.ActivityManager;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ *  StartupMetrics measures how long a cold start takes from the moment the
+ *  process starts until the first post is drawn in the feed, i.e. the time a
+ *  logged in user waits after tapping the launcher icon. Specifically, this
+ *  class handles the following features:
+ *      - Taking the start of the process from the system where it knows it,
+ *      and from the start of the application otherwise
+ *      - Recording the time to the first post once per process, split by
+ *      whether the post came from the device or from the network
+ *      - Telling the system the app is fully drawn at that moment, so the
+ *      time also shows up in the system's own startup reporting
+ *      - Ignoring starts where the user had to log in first, and processes
+ *      started for something other than showing an activity, e.g. by
+ *      WorkManager to upload a post
+ */
+public class StartupMetrics {
+
+    public static final String TAG = StartupMetrics.class.getSimpleName();
+
+    public static final String TIME_TO_FIRST_STORED_POST = "time_to_first_post_stored";
+    public static final String TIME_TO_FIRST_NETWORK_POST = "time_to_first_post_network";
+
+    // Startups take from a few hundred milliseconds to several seconds, so the buckets go from
+    // 8ms up to about 33s
+    private static final long FIRST_BOUND_NANOS = 8 * 1000000L;
+
+    // Uptime the process started at, or 0 once the start is not worth measuring anymore
+    private static long sProcessStartUptime;
+
+    private StartupMetrics() {}
+
+    // Called first thing when the application is created. Only a process started to show an
+    // activity is in the foreground this early, one started for a worker or receiver is not, and
+    // the time until the user opens the app later says nothing about the start
+    public static void onProcessStart() {
+        ActivityManager.RunningAppProcessInfo processInfo = new ActivityManager.RunningAppProcessInfo();
+        ActivityManager.getMyMemoryState(processInfo);
+        if(processInfo.importance != ActivityManager.RunningAppProcessInfo.IMPORTANCE_FOREGROUND) {
+            sProcessStartUptime = 0;
+            return;
+        }
+        sProcessStartUptime = (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
+                ? Process.getStartUptimeMillis() : SystemClock.uptimeMillis();
+    }
+
+    // Called when the start waits on the user, e.g. to log in, so it says nothing about the app
+    public static void cancel() {
+        sProcessStartUptime = 0;
+    }
+
+    // Called once the first post of the feed was drawn. Only the first call of a process counts
+    public static void onFirstPostDrawn(Activity activity, boolean fromDevice) {
+        if(sProcessStartUptime == 0) {
+            return;
+        }
+        long millis = SystemClock.uptimeMillis() - sProcessStartUptime;
+        sProcessStartUptime = 0;
+        String name = fromDevice ? TIME_TO_FIRST_STORED_POST : TIME_TO_FIRST_NETWORK_POST;
+        FeedMetrics.get().histogram(name, FIRST_BOUND_NANOS).record(millis * 1000000L);
+        activity.reportFullyDrawn();
+        Log.i(TAG, name + ": " + millis + "ms");
+    }
+}
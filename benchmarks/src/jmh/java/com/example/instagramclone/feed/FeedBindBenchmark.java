@@ -0,0 +1,106 @@
+package com.example.instagramclone.feed;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  FeedBindBenchmark measures the plain Java work done for every row the
+ *  feed binds, i.e. sorting the post's timestamp into its bucket, working out
+ *  when that timestamp changes next, looking up whether the user liked the
+ *  post and building its like count label. Each operation binds a single
+ *  row, cycling through the feed, so the throughput is in rows per
+ *  millisecond and the gc profiler reports the bytes allocated per bound row.
+ *  Specifically, the benchmark varies the following:
+ *      - The number of posts in the feed, i.e. a single page, a long scroll
+ *      session and a very long one
+ *      - The most likes a post has, so like counts range from ones whose
+ *      label is shared to ones whose label is built on every bind
+ *      - The number of posts the user liked, i.e. the size of the liked posts
+ *      index every row looks its post up in
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FeedBindBenchmark {
+
+    // Posts are spread over the month before now, so every bucket unit shows up
+    private static final long FEED_SPAN_MILLIS = 30 * RelativeTimeBuckets.DAY_IN_MILLIS;
+
+    @Param({"20", "1000", "10000"})
+    public int feedSize;
+
+    @Param({"0", "100", "100000"})
+    public int maxLikes;
+
+    @Param({"0", "1000", "100000"})
+    public int likedPosts;
+
+    private RelativeTimeBuckets mBuckets;
+    private long mNowMillis;
+    private String[] mPostIds;
+    private long[] mCreatedAt;
+    private int[] mLikeCounts;
+    private Set<String> mLikedPostIds;
+    private int mNextRow;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        mBuckets = new RelativeTimeBuckets(TimeZone.getTimeZone("America/New_York"));
+        mNowMillis = 1594000000000L;
+        mPostIds = new String[feedSize];
+        mCreatedAt = new long[feedSize];
+        mLikeCounts = new int[feedSize];
+        for(int i = 0; i < feedSize; i++) {
+            mPostIds[i] = objectId(random);
+            mCreatedAt[i] = mNowMillis - (long) (random.nextDouble() * FEED_SPAN_MILLIS);
+            mLikeCounts[i] = (maxLikes == 0) ? 0 : random.nextInt(maxLikes + 1);
+        }
+        // The user liked every other post of the feed, and the rest of their likes are on posts
+        // that are not in it
+        mLikedPostIds = new HashSet<>();
+        for(int i = 0; i < feedSize && mLikedPostIds.size() < likedPosts; i += 2) {
+            mLikedPostIds.add(mPostIds[i]);
+        }
+        while(mLikedPostIds.size() < likedPosts) {
+            mLikedPostIds.add(objectId(random));
+        }
+        mNextRow = 0;
+    }
+
+    @Benchmark
+    public void bindRow(Blackhole blackhole) {
+        int row = mNextRow;
+        mNextRow = (row + 1 == feedSize) ? 0 : row + 1;
+
+        long createdAt = mCreatedAt[row];
+        blackhole.consume(mBuckets.bucketOf(createdAt, mNowMillis));
+        blackhole.consume(mBuckets.millisUntilNextChange(createdAt, mNowMillis));
+        blackhole.consume(mLikedPostIds.contains(mPostIds[row]));
+        blackhole.consume(LikesLabel.format(mLikeCounts[row]));
+    }
+
+    // A random objectId like the ones Parse hands out, 10 alphanumeric characters
+    private static String objectId(Random random) {
+        String alphabet = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+        char[] id = new char[10];
+        for(int i = 0; i < id.length; i++) {
+            id[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return new String(id);
+    }
+}
@@ -0,0 +1,27 @@
+// Cloud Code of the Parse server the app uses
+
+// Gives every post the like count of the users in its likes array. Posts created before the app
+// kept a count have none, and the app does not increment a missing count. Run it once after
+// deploying the app version that keeps counts. Running it again fixes counts that drifted from
+// their array, e.g. from likes made by older app versions
+Parse.Cloud.job("backfillLikeCount", async (request) => {
+  const query = new Parse.Query("Post");
+  query.select("likes", "likeCount");
+  let updated = 0;
+  await query.eachBatch(async (posts) => {
+    const changed = posts.filter((post) => {
+      const likeCount = (post.get("likes") || []).length;
+      if (post.get("likeCount") === likeCount) {
+        return false;
+      }
+      post.set("likeCount", likeCount);
+      return true;
+    });
+    if (changed.length > 0) {
+      await Parse.Object.saveAll(changed, { useMasterKey: true });
+      updated += changed.length;
+    }
+    request.message("Updated the like count of " + updated + " posts");
+  }, { batchSize: 100, useMasterKey: true });
+  return "Updated the like count of " + updated + " posts";
+});
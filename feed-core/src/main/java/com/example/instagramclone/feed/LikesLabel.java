@@ -0,0 +1,36 @@
+package com.example.instagramclone.feed;
+
+/**
+ *  LikesLabel builds the like count shown under a post, e.g. "1 like" or
+ *  "12 likes". It is called for every bound row and every like tap, so the
+ *  labels of the counts most posts have are built once and shared instead of
+ *  being concatenated on every bind.
+ */
+public class LikesLabel {
+
+    // Counts below this get a shared label. Counts above it are rare enough to be built on demand
+    private static final int MAX_CACHED_COUNT = 1000;
+
+    private static final String[] sLabels = new String[MAX_CACHED_COUNT];
+
+    private LikesLabel() {}
+
+    // Taking into account singular and plural. A count is never shown below zero
+    public static String format(int likeCount) {
+        likeCount = Math.max(likeCount, 0);
+        if(likeCount >= MAX_CACHED_COUNT) {
+            return build(likeCount);
+        }
+        // Racing threads at worst build the same label twice
+        String label = sLabels[likeCount];
+        if(label == null) {
+            label = build(likeCount);
+            sLabels[likeCount] = label;
+        }
+        return label;
+    }
+
+    private static String build(int likeCount) {
+        return likeCount + ((likeCount == 1) ? " like" : " likes");
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.instagramclone.feed;
+
+import java.util.TimeZone;
+
+/**
+ *  RelativeTimeBuckets sorts timestamps into the buckets a relative timestamp
+ *  such as "3 minutes ago" is rendered from, the same ones Android's
+ *  DateUtils.getRelativeTimeSpanString picks with second resolution. It does
+ *  no rendering itself and only uses plain Java, so the work it does for
+ *  every bound row can be measured off the device.
+ *  Specifically, this class handles the following features:
+ *      - Packing the unit, direction and count of a timestamp's bucket into a
+ *      single long, without allocating, so rendered strings can be cached
+ *      per bucket
+ *      - Working out how long a timestamp stays in its bucket, so the
+ *      timestamps on screen can be refreshed exactly when they change
+ *      - Counting days in calendar days of the given time zone
+ *      - Telling dates of the current year, which are shown without the year,
+ *      apart from older ones, so their labels change at New Year
+ */
+public class RelativeTimeBuckets {
+
+    public static final long SECOND_IN_MILLIS = 1000;
+    public static final long MINUTE_IN_MILLIS = SECOND_IN_MILLIS * 60;
+    public static final long HOUR_IN_MILLIS = MINUTE_IN_MILLIS * 60;
+    public static final long DAY_IN_MILLIS = HOUR_IN_MILLIS * 24;
+    public static final long WEEK_IN_MILLIS = DAY_IN_MILLIS * 7;
+
+    // Bucket units, in the same order DateUtils picks them
+    private static final int UNIT_SECONDS = 0;
+    private static final int UNIT_MINUTES = 1;
+    private static final int UNIT_HOURS = 2;
+    private static final int UNIT_DAYS = 3;
+    // Timestamps more than a week old are shown as a date, e.g. "Jul 9, 2020"
+    private static final int UNIT_DATE = 4;
+
+    private final TimeZone mTimeZone;
+
+    public RelativeTimeBuckets(TimeZone timeZone) {
+        this.mTimeZone = timeZone;
+    }
+
+    // Packs the unit, direction and count of the timestamp's bucket into a single key. Two
+    // timestamps with the same key are always formatted to the same string
+    public long bucketOf(long timeMillis, long nowMillis) {
+        boolean past = nowMillis >= timeMillis;
+        long duration = Math.abs(nowMillis - timeMillis);
+        int unit;
+        long count;
+        if(duration < MINUTE_IN_MILLIS) {
+            unit = UNIT_SECONDS;
+            count = duration / SECOND_IN_MILLIS;
+        } else if(duration < HOUR_IN_MILLIS) {
+            unit = UNIT_MINUTES;
+            count = duration / MINUTE_IN_MILLIS;
+        } else if(duration < DAY_IN_MILLIS) {
+            unit = UNIT_HOURS;
+            count = duration / HOUR_IN_MILLIS;
+        } else if(duration < WEEK_IN_MILLIS) {
+            unit = UNIT_DAYS;
+            count = Math.abs(localDay(nowMillis) - localDay(timeMillis));
+        } else {
+            // The date itself is shown, so every day gets its own bucket. The year is only shown
+            // for dates outside the current year
+            unit = UNIT_DATE;
+            long day = localDay(timeMillis);
+            boolean currentYear = yearOf(day) == yearOf(localDay(nowMillis));
+            count = (day << 1) | (currentYear ? 0L : 1L);
+            past = true;
+        }
+        return ((long) unit << 48) | ((past ? 0L : 1L) << 47) | (count & ((1L << 47) - 1));
+    }
+
+    // How many milliseconds from now the formatted string of the timestamp will change, or
+    // Long.MAX_VALUE if it never will
+    public long millisUntilNextChange(long timeMillis, long nowMillis) {
+        long duration = nowMillis - timeMillis;
+        // Timestamps in the future only happen because of clock skew and soon stop being so
+        if(duration < 0) {
+            return SECOND_IN_MILLIS;
+        }
+        if(duration < MINUTE_IN_MILLIS) {
+            return SECOND_IN_MILLIS - duration % SECOND_IN_MILLIS;
+        }
+        if(duration < HOUR_IN_MILLIS) {
+            return MINUTE_IN_MILLIS - duration % MINUTE_IN_MILLIS;
+        }
+        if(duration < DAY_IN_MILLIS) {
+            return HOUR_IN_MILLIS - duration % HOUR_IN_MILLIS;
+        }
+        if(duration < WEEK_IN_MILLIS) {
+            // Days are counted in calendar days, so the string changes at the next local midnight
+            // or when the timestamp becomes a week old and is shown as a date instead
+            long nextMidnight = startOfLocalDay(localDay(nowMillis) + 1, nowMillis);
+            return Math.min(nextMidnight - nowMillis, WEEK_IN_MILLIS - duration);
+        }
+        // A date of the current year gets its year once the next year starts
+        long nowYear = yearOf(localDay(nowMillis));
+        if(yearOf(localDay(timeMillis)) == nowYear) {
+            return startOfLocalDay(firstDayOfYear(nowYear + 1), nowMillis) - nowMillis;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    // The time the local day starts at, given a time close to it. On a day the clocks change, the
+    // offset at midnight differs from the one at the given time, so the offset is taken at midnight
+    private long startOfLocalDay(long day, long nearMillis) {
+        long dayStart = DAY_IN_MILLIS * day;
+        long midnight = dayStart - mTimeZone.getOffset(nearMillis);
+        return dayStart - mTimeZone.getOffset(midnight);
+    }
+
+    // The number of the calendar day the time falls on in the time zone
+    private long localDay(long timeMillis) {
+        return floorDiv(timeMillis + mTimeZone.getOffset(timeMillis), DAY_IN_MILLIS);
+    }
+
+    // The year of the Gregorian calendar the day falls in, counting days from 1970-01-01. Computed
+    // rather than taken from a Calendar, so sorting a timestamp does not allocate
+    private static long yearOf(long day) {
+        // Days since 0000-03-01, so the leap day is the last day of a year that starts in March
+        long shifted = day + 719468;
+        long era = floorDiv(shifted, 146097);
+        long dayOfEra = shifted - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        // January and February belong to the year after the one that started in March
+        boolean janOrFeb = dayOfYear >= 306;
+        return era * 400 + yearOfEra + (janOrFeb ? 1 : 0);
+    }
+
+    // The day January 1st of the year falls on, counting days from 1970-01-01
+    private static long firstDayOfYear(long year) {
+        // It is day 306 of the year that started in March before it
+        long marchYear = year - 1;
+        long era = floorDiv(marchYear, 400);
+        long yearOfEra = marchYear - era * 400;
+        long dayOfEra = 365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100 + 306;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    // Division rounding towards negative infinity, for times before 1970. Math.floorDiv needs API 24
+    private static long floorDiv(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        if(dividend % divisor != 0 && (dividend < 0) != (divisor < 0)) {
+            quotient--;
+        }
+        return quotient;
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.instagramclone.feed;
+
+import static com.example.instagramclone.feed.RelativeTimeBuckets.DAY_IN_MILLIS;
+import static com.example.instagramclone.feed.RelativeTimeBuckets.HOUR_IN_MILLIS;
+import static com.example.instagramclone.feed.RelativeTimeBuckets.MINUTE_IN_MILLIS;
+import static com.example.instagramclone.feed.RelativeTimeBuckets.SECOND_IN_MILLIS;
+import static com.example.instagramclone.feed.RelativeTimeBuckets.WEEK_IN_MILLIS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ *  Tests that RelativeTimeBuckets puts timestamps in the same buckets as
+ *  DateUtils.getRelativeTimeSpanString with second resolution, and that the
+ *  time until a bucket changes is exact, also on days the clocks change.
+ */
+public class RelativeTimeBucketsTest {
+
+    // Springs forward on 2020-03-08 and falls back on 2020-11-01, both at 2am
+    private static final TimeZone NEW_YORK = TimeZone.getTimeZone("America/New_York");
+
+    private final RelativeTimeBuckets mBuckets = new RelativeTimeBuckets(NEW_YORK);
+
+    @Test
+    public void secondsUntilAMinute() {
+        long now = localTime(2020, Calendar.JULY, 9, 12, 0);
+        assertEquals(mBuckets.bucketOf(now - 59 * SECOND_IN_MILLIS, now),
+                mBuckets.bucketOf(now - 59 * SECOND_IN_MILLIS - 999, now));
+        assertNotEquals(mBuckets.bucketOf(now - 58 * SECOND_IN_MILLIS, now),
+                mBuckets.bucketOf(now - 59 * SECOND_IN_MILLIS, now));
+        assertNotEquals(mBuckets.bucketOf(now - 59 * SECOND_IN_MILLIS, now),
+                mBuckets.bucketOf(now - MINUTE_IN_MILLIS, now));
+    }
+
+    @Test
+    public void minutesUntilAnHour() {
+        long now = localTime(2020, Calendar.JULY, 9, 12, 0);
+        assertEquals(mBuckets.bucketOf(now - MINUTE_IN_MILLIS, now),
+                mBuckets.bucketOf(now - 2 * MINUTE_IN_MILLIS + 1, now));
+        assertEquals(mBuckets.bucketOf(now - 59 * MINUTE_IN_MILLIS, now),
+                mBuckets.bucketOf(now - HOUR_IN_MILLIS + 1, now));
+        assertNotEquals(mBuckets.bucketOf(now - HOUR_IN_MILLIS + 1, now),
+                mBuckets.bucketOf(now - HOUR_IN_MILLIS, now));
+    }
+
+    @Test
+    public void hoursUntilADay() {
+        long now = localTime(2020, Calendar.JULY, 9, 12, 0);
+        assertEquals(mBuckets.bucketOf(now - 23 * HOUR_IN_MILLIS, now),
+                mBuckets.bucketOf(now - DAY_IN_MILLIS + 1, now));
+        assertNotEquals(mBuckets.bucketOf(now - DAY_IN_MILLIS + 1, now),
+                mBuckets.bucketOf(now - DAY_IN_MILLIS, now));
+    }
+
+    @Test
+    public void daysUntilAWeek() {
+        long now = localTime(2020, Calendar.JULY, 9, 12, 0);
+        assertEquals(mBuckets.bucketOf(localTime(2020, Calendar.JULY, 3, 0, 0), now),
+                mBuckets.bucketOf(localTime(2020, Calendar.JULY, 3, 23, 59), now));
+        assertNotEquals(mBuckets.bucketOf(now - WEEK_IN_MILLIS + 1, now),
+                mBuckets.bucketOf(now - WEEK_IN_MILLIS, now));
+        // Older timestamps are shown as their date, which is the same for the whole day
+        assertEquals(mBuckets.bucketOf(localTime(2020, Calendar.JULY, 1, 0, 0), now),
+                mBuckets.bucketOf(localTime(2020, Calendar.JULY, 1, 23, 59), now));
+        assertNotEquals(mBuckets.bucketOf(localTime(2020, Calendar.JULY, 1, 23, 59), now),
+                mBuckets.bucketOf(localTime(2020, Calendar.JULY, 2, 0, 0), now));
+    }
+
+    @Test
+    public void pastAndFutureDiffer() {
+        long now = localTime(2020, Calendar.JULY, 9, 12, 0);
+        assertNotEquals(mBuckets.bucketOf(now - 5 * MINUTE_IN_MILLIS, now),
+                mBuckets.bucketOf(now + 5 * MINUTE_IN_MILLIS, now));
+    }
+
+    @Test
+    public void yesterdayEndsAtLocalMidnight() {
+        // Less than a day old is still counted in hours, even across midnight
+        long now = localTime(2020, Calendar.JULY, 9, 0, 30);
+        assertEquals(mBuckets.bucketOf(now - 2 * HOUR_IN_MILLIS, now),
+                mBuckets.bucketOf(localTime(2020, Calendar.JULY, 8, 22, 30), now));
+
+        // A day or more old is counted in calendar days, so 24 hours and a bit is yesterday if it
+        // was after midnight and two days ago if it was before
+        long yesterday = mBuckets.bucketOf(localTime(2020, Calendar.JULY, 8, 0, 0), now);
+        assertEquals(yesterday, mBuckets.bucketOf(localTime(2020, Calendar.JULY, 8, 0, 29), now));
+        assertNotEquals(yesterday, mBuckets.bucketOf(localTime(2020, Calendar.JULY, 7, 23, 59), now));
+        assertEquals(mBuckets.bucketOf(localTime(2020, Calendar.JULY, 7, 23, 59), now),
+                mBuckets.bucketOf(localTime(2020, Calendar.JULY, 7, 0, 31), now));
+
+        // Yesterday turns into two days ago at the next local midnight
+        long time = localTime(2020, Calendar.JULY, 8, 0, 0);
+        long midnight = localTime(2020, Calendar.JULY, 10, 0, 0);
+        assertEquals(midnight - now, mBuckets.millisUntilNextChange(time, now));
+        assertEquals(yesterday, mBuckets.bucketOf(time, midnight - 1));
+        assertNotEquals(yesterday, mBuckets.bucketOf(time, midnight));
+    }
+
+    @Test
+    public void daysOnTheDayClocksSpringForward() {
+        // Noon the day before is only 23 hours ago, so it is still counted in hours
+        long time = localTime(2020, Calendar.MARCH, 7, 12, 0);
+        long now = localTime(2020, Calendar.MARCH, 8, 12, 0);
+        assertEquals(23 * HOUR_IN_MILLIS, now - time);
+        assertNotEquals(mBuckets.bucketOf(time, now), mBuckets.bucketOf(now - DAY_IN_MILLIS, now));
+
+        // The day is 23 hours long, midnight is still the end of it
+        time = localTime(2020, Calendar.MARCH, 7, 8, 0);
+        long midnight = localTime(2020, Calendar.MARCH, 9, 0, 0);
+        assertEquals(midnight - now, mBuckets.millisUntilNextChange(time, now));
+        assertEquals(mBuckets.bucketOf(time, now), mBuckets.bucketOf(time, midnight - 1));
+        assertNotEquals(mBuckets.bucketOf(time, now), mBuckets.bucketOf(time, midnight));
+    }
+
+    @Test
+    public void daysOnTheDayClocksFallBack() {
+        // The day is 25 hours long, so midnight is 24.5 hours after half past midnight
+        long time = localTime(2020, Calendar.OCTOBER, 30, 12, 0);
+        long now = localTime(2020, Calendar.NOVEMBER, 1, 0, 30);
+        long midnight = localTime(2020, Calendar.NOVEMBER, 2, 0, 0);
+        assertEquals(24 * HOUR_IN_MILLIS + 30 * MINUTE_IN_MILLIS, midnight - now);
+        assertEquals(midnight - now, mBuckets.millisUntilNextChange(time, now));
+        assertEquals(mBuckets.bucketOf(time, now), mBuckets.bucketOf(time, midnight - 1));
+        assertNotEquals(mBuckets.bucketOf(time, now), mBuckets.bucketOf(time, midnight));
+    }
+
+    @Test
+    public void bucketHoldsUntilNextChange() {
+        long[] nows = {
+                localTime(2020, Calendar.JULY, 9, 12, 0),
+                localTime(2020, Calendar.MARCH, 8, 1, 30),
+                localTime(2020, Calendar.MARCH, 8, 23, 59),
+                localTime(2020, Calendar.NOVEMBER, 1, 1, 30),
+                localTime(2020, Calendar.NOVEMBER, 1, 23, 59),
+        };
+        long[] ages = {
+                0, 1, 59 * SECOND_IN_MILLIS + 999, MINUTE_IN_MILLIS, 59 * MINUTE_IN_MILLIS + 1,
+                HOUR_IN_MILLIS, 23 * HOUR_IN_MILLIS + 17, DAY_IN_MILLIS, 2 * DAY_IN_MILLIS + 7,
+                WEEK_IN_MILLIS - 1,
+        };
+        for(long now : nows) {
+            for(long age : ages) {
+                long time = now - age;
+                long bucket = mBuckets.bucketOf(time, now);
+                long untilChange = mBuckets.millisUntilNextChange(time, now);
+                String message = "time " + time + " at " + now;
+                assertEquals(message, bucket, mBuckets.bucketOf(time, now + untilChange - 1));
+                assertNotEquals(message, bucket, mBuckets.bucketOf(time, now + untilChange));
+            }
+        }
+    }
+
+    @Test
+    public void datesOfThisYearChangeAtNewYear() {
+        // The year is only shown for dates outside the current year
+        long time = localTime(2020, Calendar.JULY, 1, 12, 0);
+        long now = localTime(2020, Calendar.DECEMBER, 31, 23, 0);
+        long newYear = localTime(2021, Calendar.JANUARY, 1, 0, 0);
+        assertEquals(newYear - now, mBuckets.millisUntilNextChange(time, now));
+        assertEquals(mBuckets.bucketOf(time, now), mBuckets.bucketOf(time, newYear - 1));
+        assertNotEquals(mBuckets.bucketOf(time, now), mBuckets.bucketOf(time, newYear));
+
+        // Dates of earlier years already show their year
+        assertEquals(Long.MAX_VALUE, mBuckets.millisUntilNextChange(time, newYear));
+        assertEquals(mBuckets.bucketOf(time, newYear),
+                mBuckets.bucketOf(time, localTime(2022, Calendar.MARCH, 1, 0, 0)));
+    }
+
+    @Test
+    public void newYearInSummerTime() {
+        // New Year in Sydney falls in daylight saving time, unlike most of the year before it
+        RelativeTimeBuckets buckets = new RelativeTimeBuckets(TimeZone.getTimeZone("Australia/Sydney"));
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("Australia/Sydney"));
+        calendar.clear();
+        calendar.set(2020, Calendar.JULY, 9, 12, 0);
+        long now = calendar.getTimeInMillis();
+        calendar.set(2021, Calendar.JANUARY, 1, 0, 0);
+        long newYear = calendar.getTimeInMillis();
+        assertEquals(newYear - now, buckets.millisUntilNextChange(now - WEEK_IN_MILLIS, now));
+    }
+
+    private static long localTime(int year, int month, int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(NEW_YORK);
+        calendar.clear();
+        calendar.set(year, month, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+}